@@ -0,0 +1,305 @@
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Armazenamento de anexos endereçado por conteúdo: cada arquivo é gravado
+ * uma única vez em {@code <diretorio>/<aa>/<bb>/<sha256>}, não importa
+ * quantos tickets o referenciem. O download usa FileChannel.transferTo, sem
+ * passar o conteúdo pelo heap; arquivos pequenos e acessados com frequência
+ * ficam num cache LRU em memória.
+ */
+public class ArmazenamentoAnexos {
+
+    private static final int TAMANHO_MAXIMO_EM_CACHE = 64 * 1024;
+    private static final long CAPACIDADE_CACHE = 32L * 1024 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Path diretorio;
+    private final CacheLru cache = new CacheLru(CAPACIDADE_CACHE);
+
+    public ArmazenamentoAnexos(Path diretorio) {
+        this.diretorio = diretorio;
+    }
+
+    /**
+     * Grava o conteúdo num arquivo temporário calculando o SHA-256 durante a
+     * cópia e depois o move para o endereço definitivo. Se o mesmo conteúdo
+     * já existir, o temporário é descartado. Conteúdo com mais de
+     * {@code tamanhoMaximo} bytes interrompe a cópia com IOException, sem
+     * deixar nada gravado.
+     */
+    public Conteudo armazenar(InputStream entrada, long tamanhoMaximo) throws IOException {
+        Path pastaTemporaria = diretorio.resolve("tmp");
+        Files.createDirectories(pastaTemporaria);
+        Path temporario = Files.createTempFile(pastaTemporaria, "upload", ".part");
+        try {
+            MessageDigest sha256 = novoDigest();
+            long tamanho;
+            try (DigestInputStream entradaComHash = new DigestInputStream(new EntradaLimitada(entrada, tamanhoMaximo), sha256)) {
+                tamanho = Files.copy(entradaComHash, temporario, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String hash = hex(sha256.digest());
+            Path destino = diretorio.resolve(caminhoRelativo(hash));
+            if (!Files.exists(destino)) {
+                Files.createDirectories(destino.getParent());
+                // Uploads simultâneos do mesmo conteúdo produzem o mesmo arquivo; a troca atômica basta
+                Files.move(temporario, destino, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return new Conteudo(hash, tamanho);
+        } finally {
+            Files.deleteIfExists(temporario);
+        }
+    }
+
+    /**
+     * Envia {@code intervalo} do conteúdo para o destino e retorna o número de
+     * bytes escritos.
+     */
+    public long enviar(String hash, Intervalo intervalo, WritableByteChannel destino) throws IOException {
+        byte[] emCache = cache.obter(hash);
+        if (emCache != null) {
+            return escreverTudo(ByteBuffer.wrap(emCache, (int) intervalo.getInicio(), (int) intervalo.getComprimento()), destino);
+        }
+        try (FileChannel canal = FileChannel.open(diretorio.resolve(caminhoRelativo(hash)), StandardOpenOption.READ)) {
+            long tamanho = canal.size();
+            if (tamanho <= TAMANHO_MAXIMO_EM_CACHE) {
+                ByteBuffer conteudo = ByteBuffer.allocate((int) tamanho);
+                while (conteudo.hasRemaining()) {
+                    if (canal.read(conteudo) < 0) {
+                        break;
+                    }
+                }
+                cache.guardar(hash, conteudo.array());
+                return escreverTudo(ByteBuffer.wrap(conteudo.array(), (int) intervalo.getInicio(), (int) intervalo.getComprimento()), destino);
+            }
+            long posicao = intervalo.getInicio();
+            long fim = intervalo.getInicio() + intervalo.getComprimento();
+            while (posicao < fim) {
+                long enviados = canal.transferTo(posicao, fim - posicao, destino);
+                if (enviados <= 0) {
+                    break;
+                }
+                posicao += enviados;
+            }
+            return posicao - intervalo.getInicio();
+        }
+    }
+
+    private static long escreverTudo(ByteBuffer buffer, WritableByteChannel destino) throws IOException {
+        long total = 0;
+        while (buffer.hasRemaining()) {
+            total += destino.write(buffer);
+        }
+        return total;
+    }
+
+    /** Caminho relativo ao diretório base, no formato gravado em anexos.caminho. */
+    public static String caminhoRelativo(String hash) {
+        return hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash;
+    }
+
+    private static MessageDigest novoDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponível", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] texto = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            texto[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+            texto[2 * i + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(texto);
+    }
+
+    private static class EntradaLimitada extends FilterInputStream {
+
+        private final long limite;
+        private long lidos;
+
+        EntradaLimitada(InputStream entrada, long limite) {
+            super(entrada);
+            this.limite = limite;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                contar(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int inicio, int comprimento) throws IOException {
+            int n = super.read(buffer, inicio, comprimento);
+            if (n > 0) {
+                contar(n);
+            }
+            return n;
+        }
+
+        private void contar(int n) throws IOException {
+            lidos += n;
+            if (lidos > limite) {
+                throw new IOException("Arquivo excede o tamanho máximo de " + limite + " bytes");
+            }
+        }
+    }
+
+    public static class Conteudo {
+
+        private final String hash;
+        private final long tamanho;
+
+        Conteudo(String hash, long tamanho) {
+            this.hash = hash;
+            this.tamanho = tamanho;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public long getTamanho() {
+            return tamanho;
+        }
+    }
+
+    /** Intervalo de bytes de um download, a partir do cabeçalho HTTP Range. */
+    public static class Intervalo {
+
+        private final long inicio;
+        private final long comprimento;
+        private final boolean parcial;
+
+        private Intervalo(long inicio, long comprimento, boolean parcial) {
+            this.inicio = inicio;
+            this.comprimento = comprimento;
+            this.parcial = parcial;
+        }
+
+        public static Intervalo completo(long tamanho) {
+            return new Intervalo(0, tamanho, false);
+        }
+
+        /**
+         * Interpreta um cabeçalho "bytes=inicio-fim", "bytes=inicio-" ou
+         * "bytes=-sufixo". Sem cabeçalho, com múltiplos intervalos ou com um
+         * intervalo sintaticamente inválido (fim antes do início), devolve o
+         * arquivo completo, como pede a RFC 7233; retorna null se o intervalo
+         * não puder ser atendido (HTTP 416).
+         */
+        public static Intervalo deCabecalho(String range, long tamanho) {
+            if (range == null || !range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+                return completo(tamanho);
+            }
+            String especificacao = range.substring("bytes=".length()).trim();
+            int hifen = especificacao.indexOf('-');
+            if (hifen < 0) {
+                return completo(tamanho);
+            }
+            try {
+                String textoInicio = especificacao.substring(0, hifen).trim();
+                String textoFim = especificacao.substring(hifen + 1).trim();
+                long inicio;
+                long fim;
+                if (textoInicio.isEmpty()) {
+                    long sufixo = Long.parseLong(textoFim);
+                    if (sufixo <= 0) {
+                        return null;
+                    }
+                    inicio = Math.max(0, tamanho - sufixo);
+                    fim = tamanho - 1;
+                } else {
+                    inicio = Long.parseLong(textoInicio);
+                    fim = tamanho - 1;
+                    if (!textoFim.isEmpty()) {
+                        long fimPedido = Long.parseLong(textoFim);
+                        if (fimPedido < inicio) {
+                            return completo(tamanho);
+                        }
+                        fim = Math.min(fimPedido, fim);
+                    }
+                }
+                if (inicio >= tamanho) {
+                    return null;
+                }
+                return new Intervalo(inicio, fim - inicio + 1, true);
+            } catch (NumberFormatException e) {
+                return completo(tamanho);
+            }
+        }
+
+        /**
+         * O mesmo intervalo restrito a um conteúdo de {@code tamanho} bytes,
+         * ou null se ele começar depois do fim do conteúdo.
+         */
+        public Intervalo limitarA(long tamanho) {
+            if (inicio >= tamanho) {
+                return null;
+            }
+            return comprimento <= tamanho - inicio ? this : new Intervalo(inicio, tamanho - inicio, parcial);
+        }
+
+        public long getInicio() {
+            return inicio;
+        }
+
+        public long getComprimento() {
+            return comprimento;
+        }
+
+        public long getFim() {
+            return inicio + comprimento - 1;
+        }
+
+        public boolean isParcial() {
+            return parcial;
+        }
+    }
+
+    // LRU limitado pelo total de bytes armazenados
+    private static class CacheLru {
+
+        private final long capacidade;
+        private final LinkedHashMap<String, byte[]> entradas = new LinkedHashMap<>(64, 0.75f, true);
+        private long ocupado;
+
+        CacheLru(long capacidade) {
+            this.capacidade = capacidade;
+        }
+
+        synchronized byte[] obter(String hash) {
+            return entradas.get(hash);
+        }
+
+        synchronized void guardar(String hash, byte[] conteudo) {
+            byte[] anterior = entradas.put(hash, conteudo);
+            ocupado += conteudo.length - (anterior != null ? anterior.length : 0);
+            Iterator<Map.Entry<String, byte[]>> iterador = entradas.entrySet().iterator();
+            while (ocupado > capacidade && iterador.hasNext()) {
+                ocupado -= iterador.next().getValue().length;
+                iterador.remove();
+            }
+        }
+    }
+}
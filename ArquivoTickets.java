@@ -0,0 +1,103 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Move tickets FECHADO há mais de N dias, com comentários, anexos, tags e
+ * histórico, para as tabelas *_arquivo. As tabelas quentes ficam apenas com
+ * o conjunto de trabalho; o arquivo continua consultável pelo Sistema.
+ */
+public class ArquivoTickets {
+
+    private static final int TAMANHO_LOTE = 500;
+
+    private static final String SQL_SELECIONAR_LOTE = "SELECT id FROM tickets WHERE status = 'FECHADO' "
+            + "AND data_fechamento < (NOW() - INTERVAL ? DAY) ORDER BY id LIMIT ? FOR UPDATE";
+
+    private static final String COLUNAS_TICKETS = "id, codigo, titulo, descricao, status, prioridade, categoria_id, solicitante_id, "
+            + "responsavel_id, data_criacao, data_atualizacao, data_resolucao, data_fechamento";
+    private static final String COLUNAS_COMENTARIOS = "id, ticket_id, usuario_id, conteudo, tipo, data_criacao";
+    private static final String COLUNAS_ANEXOS = "id, ticket_id, nome_original, nome_arquivo, tamanho, tipo_mime, caminho, data_upload, usuario_id";
+    private static final String COLUNAS_TICKET_TAGS = "ticket_id, tag_id";
+    private static final String COLUNAS_HISTORICO = "id, ticket_id, usuario_id, acao, campo_alterado, valor_anterior, valor_novo, data_alteracao";
+
+    private final Connection conexao;
+
+    public ArquivoTickets(Connection conexao) {
+        this.conexao = conexao;
+    }
+
+    /**
+     * Arquiva, em lotes transacionais, os tickets fechados há mais de
+     * {@code dias} dias e retorna os ids arquivados.
+     */
+    public List<Integer> arquivarFechadosHaMaisDe(int dias) throws SQLException {
+        List<Integer> arquivados = new ArrayList<>();
+        boolean autoCommitOriginal = conexao.getAutoCommit();
+        conexao.setAutoCommit(false);
+        try {
+            List<Integer> lote;
+            do {
+                lote = arquivarLote(dias);
+                arquivados.addAll(lote);
+            } while (lote.size() == TAMANHO_LOTE);
+        } finally {
+            conexao.setAutoCommit(autoCommitOriginal);
+        }
+        return arquivados;
+    }
+
+    private List<Integer> arquivarLote(int dias) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try {
+            try (PreparedStatement stmt = conexao.prepareStatement(SQL_SELECIONAR_LOTE)) {
+                stmt.setInt(1, dias);
+                stmt.setInt(2, TAMANHO_LOTE);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getInt("id"));
+                    }
+                }
+            }
+            if (!ids.isEmpty()) {
+                copiar("tickets", COLUNAS_TICKETS, "id", ids);
+                copiar("comentarios", COLUNAS_COMENTARIOS, "ticket_id", ids);
+                copiar("anexos", COLUNAS_ANEXOS, "ticket_id", ids);
+                copiar("ticket_tags", COLUNAS_TICKET_TAGS, "ticket_id", ids);
+                copiar("historico_tickets", COLUNAS_HISTORICO, "ticket_id", ids);
+                // comentarios, anexos, ticket_tags e historico_tickets saem por ON DELETE CASCADE
+                executar("DELETE FROM tickets WHERE id IN (" + marcadores(ids.size()) + ")", ids);
+            }
+            conexao.commit();
+        } catch (SQLException e) {
+            conexao.rollback();
+            throw e;
+        }
+        return ids;
+    }
+
+    private void copiar(String tabela, String colunas, String colunaTicket, List<Integer> ids) throws SQLException {
+        executar("INSERT INTO " + tabela + "_arquivo (" + colunas + ") SELECT " + colunas + " FROM " + tabela
+                + " WHERE " + colunaTicket + " IN (" + marcadores(ids.size()) + ")", ids);
+    }
+
+    private void executar(String sql, List<Integer> ids) throws SQLException {
+        try (PreparedStatement stmt = conexao.prepareStatement(sql)) {
+            for (int i = 0; i < ids.size(); i++) {
+                stmt.setInt(i + 1, ids.get(i));
+            }
+            stmt.executeUpdate();
+        }
+    }
+
+    private static String marcadores(int quantidade) {
+        StringBuilder sb = new StringBuilder(quantidade * 2);
+        for (int i = 0; i < quantidade; i++) {
+            sb.append(i == 0 ? "?" : ",?");
+        }
+        return sb.toString();
+    }
+}
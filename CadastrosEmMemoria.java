@@ -0,0 +1,102 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cópia em memória de usuarios e categorias, atualizada de forma incremental
+ * pela data_atualizacao de cada tabela. Também é o conteúdo gravado no
+ * snapshot binário.
+ */
+public class CadastrosEmMemoria {
+
+    private static final String SQL_USUARIOS = "SELECT * FROM usuarios WHERE data_atualizacao >= ? ORDER BY id";
+    private static final String SQL_CATEGORIAS = "SELECT * FROM categorias WHERE data_atualizacao >= ? ORDER BY id";
+
+    private final Map<Integer, Sistema.Usuario> usuarios = new LinkedHashMap<>();
+    private final Map<Integer, Sistema.Categoria> categorias = new LinkedHashMap<>();
+    private long marcaDaguaUsuarios;
+    private long marcaDaguaCategorias;
+
+    /**
+     * Relê as linhas alteradas desde a marca d'água, menos a mesma janela de
+     * releitura do snapshot colunar: uma alteração confirmada depois de uma
+     * leitura, mas no mesmo segundo, também é aplicada.
+     */
+    public synchronized void atualizar(Connection conexao) throws SQLException {
+        try (PreparedStatement stmt = conexao.prepareStatement(SQL_USUARIOS)) {
+            stmt.setTimestamp(1, new Timestamp(Math.max(0, marcaDaguaUsuarios - SnapshotColunarTickets.JANELA_RELEITURA_MS)));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    usuarios.put(rs.getInt("id"), new Sistema.Usuario(
+                            rs.getInt("id"),
+                            rs.getString("nome"),
+                            rs.getString("email"),
+                            Sistema.PerfilUsuario.valueOf(rs.getString("perfil")),
+                            rs.getInt("departamento_id"),
+                            rs.getBoolean("ativo"),
+                            rs.getTimestamp("data_criacao")
+                    ));
+                    marcaDaguaUsuarios = Math.max(marcaDaguaUsuarios, rs.getTimestamp("data_atualizacao").getTime());
+                }
+            }
+        }
+        try (PreparedStatement stmt = conexao.prepareStatement(SQL_CATEGORIAS)) {
+            stmt.setTimestamp(1, new Timestamp(Math.max(0, marcaDaguaCategorias - SnapshotColunarTickets.JANELA_RELEITURA_MS)));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    categorias.put(rs.getInt("id"), new Sistema.Categoria(
+                            rs.getInt("id"),
+                            rs.getString("nome"),
+                            rs.getString("descricao"),
+                            rs.getString("cor"),
+                            rs.getBoolean("ativa")
+                    ));
+                    marcaDaguaCategorias = Math.max(marcaDaguaCategorias, rs.getTimestamp("data_atualizacao").getTime());
+                }
+            }
+        }
+    }
+
+    public synchronized List<Sistema.Usuario> getUsuarios() {
+        return new ArrayList<>(usuarios.values());
+    }
+
+    /** Usuário com o id dado, ou null se ainda não foi lido. */
+    public synchronized Sistema.Usuario getUsuario(int id) {
+        return usuarios.get(id);
+    }
+
+    public synchronized List<Sistema.Categoria> getCategorias() {
+        return new ArrayList<>(categorias.values());
+    }
+
+    // Usados pelo SnapshotBinario
+    synchronized long getMarcaDaguaUsuarios() {
+        return marcaDaguaUsuarios;
+    }
+
+    synchronized long getMarcaDaguaCategorias() {
+        return marcaDaguaCategorias;
+    }
+
+    synchronized void restaurar(Collection<Sistema.Usuario> usuariosSalvos, long marcaUsuarios,
+            Collection<Sistema.Categoria> categoriasSalvas, long marcaCategorias) {
+        usuarios.clear();
+        for (Sistema.Usuario usuario : usuariosSalvos) {
+            usuarios.put(usuario.getId(), usuario);
+        }
+        categorias.clear();
+        for (Sistema.Categoria categoria : categoriasSalvas) {
+            categorias.put(categoria.getId(), categoria);
+        }
+        marcaDaguaUsuarios = marcaUsuarios;
+        marcaDaguaCategorias = marcaCategorias;
+    }
+}
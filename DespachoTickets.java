@@ -0,0 +1,309 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fila de despacho dos tickets sem responsável. Há uma fila FIFO sem lock
+ * por nível de prioridade (a ordem de chegada dá a idade) e a carga atual
+ * de cada técnico. A reserva de um ticket é um compareAndSet, portanto dois
+ * técnicos nunca recebem o mesmo ticket, e ninguém precisa consultar o banco
+ * repetidamente atrás de tickets abertos. Depois de gravar a atribuição no
+ * banco, quem reservou chama {@link #confirmar} ou {@link #liberar}.
+ *
+ * <p>Há uma única instância por processo (ver {@link #getInstancia}). As
+ * escritas deste processo entram pelo {@link #aplicar}; {@link #atualizar}
+ * traz as de outros processos e a lista de técnicos ativos, pela
+ * data_atualizacao, como o {@link SnapshotColunarTickets}.
+ */
+public class DespachoTickets {
+
+    // Atualizações seguidas dentro deste intervalo não consultam o banco
+    private static final long INTERVALO_ATUALIZACAO_MS = 250L;
+
+    private static final String SQL_MARCA = "SELECT MAX(data_atualizacao) AS marca FROM tickets";
+    private static final String SQL_EM_ATENDIMENTO = "SELECT id, status, prioridade, responsavel_id FROM tickets "
+            + "WHERE status IN ('ABERTO', 'EM_ANDAMENTO') ORDER BY data_criacao, id";
+    private static final String SQL_ALTERACOES = "SELECT id, status, prioridade, responsavel_id, data_atualizacao FROM tickets "
+            + "WHERE data_atualizacao >= ? ORDER BY data_criacao, id";
+    private static final String SQL_USUARIOS = "SELECT id, perfil, ativo, data_atualizacao FROM usuarios WHERE data_atualizacao >= ?";
+    private static final int DESCARTADO = -1;
+
+    private static DespachoTickets instancia;
+
+    // filas.get(nivel) para nivel de 1 (BAIXA) a 4 (CRITICA); a posição 0 não é usada
+    private final List<ConcurrentLinkedQueue<Pendente>> filas = new ArrayList<>();
+    private final Map<Integer, Pendente> pendentesPorTicket = new ConcurrentHashMap<>();
+    private final Map<Integer, Pendente> reservados = new ConcurrentHashMap<>();
+    // Carga de todo responsável; só os técnicos ativos recebem atribuição automática
+    private final Map<Integer, AtomicInteger> cargaPorTecnico = new ConcurrentHashMap<>();
+    private final Set<Integer> tecnicos = ConcurrentHashMap.newKeySet();
+    // Tickets ABERTO/EM_ANDAMENTO e o responsável já contado na carga (0 = nenhum); torna aplicar() idempotente
+    private final Map<Integer, Integer> emAtendimento = new ConcurrentHashMap<>();
+    private volatile boolean carregado;
+    private long marcaTickets;
+    private long marcaUsuarios;
+    private long ultimaAtualizacao;
+
+    /** Instância do processo, compartilhada por todos os objetos {@link Sistema}. */
+    public static synchronized DespachoTickets getInstancia() {
+        if (instancia == null) {
+            instancia = new DespachoTickets();
+        }
+        return instancia;
+    }
+
+    public DespachoTickets() {
+        for (int nivel = 0; nivel <= Sistema.PrioridadeTicket.CRITICA.getNivel(); nivel++) {
+            filas.add(new ConcurrentLinkedQueue<Pendente>());
+        }
+    }
+
+    /**
+     * Carrega os técnicos e os tickets em atendimento. A marca d'água é lida
+     * antes, para que uma alteração feita durante a carga volte na próxima
+     * atualização. Uma carga interrompida pode ser refeita.
+     */
+    public synchronized void carregar(Connection conexao) throws SQLException {
+        long marca = 0;
+        try (PreparedStatement stmt = conexao.prepareStatement(SQL_MARCA); ResultSet rs = stmt.executeQuery()) {
+            if (rs.next() && rs.getTimestamp("marca") != null) {
+                marca = rs.getTimestamp("marca").getTime();
+            }
+        }
+        atualizarTecnicos(conexao);
+        try (PreparedStatement stmt = conexao.prepareStatement(SQL_EM_ATENDIMENTO); ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                aplicar(rs);
+            }
+        }
+        marcaTickets = marca;
+        ultimaAtualizacao = System.currentTimeMillis();
+        carregado = true;
+    }
+
+    public boolean isCarregado() {
+        return carregado;
+    }
+
+    /**
+     * Aplica os tickets e técnicos alterados desde a última leitura, inclusive
+     * por outros processos, relendo a mesma janela antes da marca d'água que
+     * o snapshot colunar.
+     */
+    public synchronized void atualizar(Connection conexao) throws SQLException {
+        long agora = System.currentTimeMillis();
+        if (!carregado || agora - ultimaAtualizacao < INTERVALO_ATUALIZACAO_MS) {
+            return;
+        }
+        atualizarTecnicos(conexao);
+        long novaMarca = marcaTickets;
+        try (PreparedStatement stmt = conexao.prepareStatement(SQL_ALTERACOES)) {
+            stmt.setTimestamp(1, new Timestamp(Math.max(0, marcaTickets - SnapshotColunarTickets.JANELA_RELEITURA_MS)));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    aplicar(rs);
+                    novaMarca = Math.max(novaMarca, rs.getTimestamp("data_atualizacao").getTime());
+                }
+            }
+        }
+        marcaTickets = novaMarca;
+        ultimaAtualizacao = agora;
+    }
+
+    private void atualizarTecnicos(Connection conexao) throws SQLException {
+        long novaMarca = marcaUsuarios;
+        try (PreparedStatement stmt = conexao.prepareStatement(SQL_USUARIOS)) {
+            stmt.setTimestamp(1, new Timestamp(Math.max(0, marcaUsuarios - SnapshotColunarTickets.JANELA_RELEITURA_MS)));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (Sistema.PerfilUsuario.TECNICO.name().equals(rs.getString("perfil")) && rs.getBoolean("ativo")) {
+                        tecnicos.add(rs.getInt("id"));
+                    } else {
+                        tecnicos.remove(rs.getInt("id"));
+                    }
+                    novaMarca = Math.max(novaMarca, rs.getTimestamp("data_atualizacao").getTime());
+                }
+            }
+        }
+        marcaUsuarios = novaMarca;
+    }
+
+    private void aplicar(ResultSet rs) throws SQLException {
+        aplicar(rs.getInt("id"),
+                Sistema.StatusTicket.valueOf(rs.getString("status")),
+                Sistema.PrioridadeTicket.valueOf(rs.getString("prioridade")),
+                rs.getInt("responsavel_id"));
+    }
+
+    /**
+     * Aplica o estado atual de um ticket, gravado por este processo ou lido
+     * do banco: ajusta a carga do responsável e põe o ticket na fila, ou o
+     * tira dela. Reaplicar o mesmo estado não altera nada, e um estado
+     * antigo é corrigido pela próxima atualização.
+     */
+    public synchronized void aplicar(int ticketId, Sistema.StatusTicket status, Sistema.PrioridadeTicket prioridade,
+            int responsavelId) {
+        Integer anterior = emAtendimento.get(ticketId);
+        if (anterior != null && anterior != 0) {
+            ajustarCarga(anterior, -1);
+        }
+        if (status == Sistema.StatusTicket.ABERTO || status == Sistema.StatusTicket.EM_ANDAMENTO) {
+            emAtendimento.put(ticketId, responsavelId);
+            if (responsavelId != 0) {
+                ajustarCarga(responsavelId, 1);
+            }
+        } else {
+            emAtendimento.remove(ticketId);
+        }
+        Pendente pendente = pendentesPorTicket.get(ticketId);
+        if (status == Sistema.StatusTicket.ABERTO && responsavelId == 0) {
+            if (pendente != null && pendente.prioridade != prioridade) {
+                descartar(ticketId);
+            }
+            // Um ticket reservado aqui e ainda não gravado não volta para a fila
+            if (!reservados.containsKey(ticketId)) {
+                enfileirar(ticketId, prioridade);
+            }
+        } else if (pendente != null) {
+            descartar(ticketId);
+        }
+    }
+
+    private AtomicInteger carga(int tecnicoId) {
+        return cargaPorTecnico.computeIfAbsent(tecnicoId, id -> new AtomicInteger());
+    }
+
+    private void enfileirar(int ticketId, Sistema.PrioridadeTicket prioridade) {
+        Pendente pendente = new Pendente(ticketId, prioridade);
+        if (pendentesPorTicket.putIfAbsent(ticketId, pendente) == null) {
+            filas.get(prioridade.getNivel()).add(pendente);
+        }
+    }
+
+    // Retira o ticket da fila sem atribuí-lo (por exemplo, fechado ou atribuído fora do despacho)
+    private void descartar(int ticketId) {
+        Pendente pendente = pendentesPorTicket.remove(ticketId);
+        if (pendente != null && pendente.responsavel.compareAndSet(0, DESCARTADO)) {
+            removerDaFila(pendente);
+        }
+    }
+
+    /**
+     * Reserva o ticket para o técnico ativo com menor carga. Retorna o id do
+     * técnico, ou 0 se o ticket já tiver sido reservado ou não houver técnicos.
+     */
+    public int reservarParaMenosCarregado(int ticketId) {
+        Pendente pendente = pendentesPorTicket.get(ticketId);
+        if (pendente == null) {
+            return 0;
+        }
+        int escolhido = 0;
+        int menorCarga = Integer.MAX_VALUE;
+        for (int tecnicoId : tecnicos) {
+            int cargaAtual = getCarga(tecnicoId);
+            if (cargaAtual < menorCarga) {
+                menorCarga = cargaAtual;
+                escolhido = tecnicoId;
+            }
+        }
+        if (escolhido == 0 || !reservar(pendente, escolhido)) {
+            return 0;
+        }
+        removerDaFila(pendente);
+        return escolhido;
+    }
+
+    // Reservas e descartes fora de reservarProximo tiram a entrada da fila, que senão ninguém consumiria
+    private void removerDaFila(Pendente pendente) {
+        filas.get(pendente.prioridade.getNivel()).remove(pendente);
+    }
+
+    /**
+     * Reserva para o técnico o ticket de maior prioridade e, dentro dela, o
+     * mais antigo. Retorna o id do ticket, ou 0 se não houver pendentes.
+     */
+    public int reservarProximo(int tecnicoId) {
+        for (int nivel = filas.size() - 1; nivel > 0; nivel--) {
+            Pendente pendente;
+            while ((pendente = filas.get(nivel).poll()) != null) {
+                // Entradas já reservadas por outro caminho são apenas descartadas da fila
+                if (reservar(pendente, tecnicoId)) {
+                    return pendente.ticketId;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private boolean reservar(Pendente pendente, int tecnicoId) {
+        if (!pendente.responsavel.compareAndSet(0, tecnicoId)) {
+            return false;
+        }
+        pendentesPorTicket.remove(pendente.ticketId, pendente);
+        reservados.put(pendente.ticketId, pendente);
+        carga(tecnicoId).incrementAndGet();
+        return true;
+    }
+
+    /** A atribuição reservada foi gravada no banco; a carga já foi contada na reserva. */
+    public synchronized void confirmar(int ticketId) {
+        Pendente pendente = reservados.remove(ticketId);
+        if (pendente == null) {
+            return;
+        }
+        Integer anterior = emAtendimento.put(ticketId, pendente.responsavel.get());
+        if (anterior != null && anterior != 0) {
+            ajustarCarga(anterior, -1);
+        }
+    }
+
+    /**
+     * Desfaz uma reserva que não pôde ser gravada. Com {@code devolverAFila}
+     * o ticket volta para o fim da fila da sua prioridade.
+     */
+    public synchronized void liberar(int ticketId, boolean devolverAFila) {
+        Pendente pendente = reservados.remove(ticketId);
+        if (pendente == null) {
+            return;
+        }
+        ajustarCarga(pendente.responsavel.get(), -1);
+        if (devolverAFila) {
+            enfileirar(ticketId, pendente.prioridade);
+        }
+    }
+
+    private void ajustarCarga(int tecnicoId, int delta) {
+        carga(tecnicoId).addAndGet(delta);
+    }
+
+    public int getCarga(int tecnicoId) {
+        AtomicInteger carga = cargaPorTecnico.get(tecnicoId);
+        return carga != null ? carga.get() : 0;
+    }
+
+    public int getTotalPendentes() {
+        return pendentesPorTicket.size();
+    }
+
+    private static class Pendente {
+
+        private final int ticketId;
+        private final Sistema.PrioridadeTicket prioridade;
+        // 0 = livre; o primeiro compareAndSet define o responsável (ou DESCARTADO)
+        private final AtomicInteger responsavel = new AtomicInteger();
+
+        Pendente(int ticketId, Sistema.PrioridadeTicket prioridade) {
+            this.ticketId = ticketId;
+            this.prioridade = prioridade;
+        }
+    }
+}
@@ -0,0 +1,646 @@
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import com.sistemastickets.config.Database;
+
+/**
+ * Gerador de carga sintética para testes de desempenho locais.
+ *
+ * <p>{@code java GeradorCarga popular} insere usuários e tickets em massa,
+ * com comentários e histórico. As distribuições de status, prioridade,
+ * categoria e solicitante são realistas. {@code java GeradorCarga executar}
+ * dispara uma mistura de operações do {@link Sistema} em malha aberta. As
+ * chegadas seguem um processo de Poisson na taxa configurada, independente
+ * de quanto o sistema demora a responder. A latência é medida a partir do
+ * instante previsto para a chegada, então o tempo na fila entra na medida.
+ * Toda chegada prevista na janela de medição é atendida e registrada, mesmo
+ * que termine depois do fim da janela.
+ * Ao final são exibidos a vazão e os percentis p50/p99/p999 de cada
+ * operação. Os parâmetros ficam em config.properties (chaves {@code carga.*}).
+ *
+ * <p>Use um banco dedicado: a população grava ids explícitos a partir do
+ * maior id existente.
+ */
+public class GeradorCarga {
+
+    private static final int TICKETS_POR_TRANSACAO = 1000;
+    private static final int LINHAS_POR_INSERT = 500;
+    private static final String SENHA_PADRAO = "carga123";
+
+    private static final String[] OPERACOES = {
+        "criarTicket", "buscarTickets", "listarTickets", "atualizarStatusTicket", "estatisticas"
+    };
+
+    private static final String[] PROBLEMAS = {
+        "Impressora %s não imprime", "Computador %s não liga", "Sem acesso à VPN em %s",
+        "Senha expirada no %s", "E-mail não sincroniza no %s", "Ramal sem linha em %s",
+        "Sistema lento no %s", "Erro ao abrir planilha no %s", "Wi-Fi caindo em %s",
+        "Solicitação de acesso ao %s", "Monitor piscando em %s", "Instalação de software no %s"
+    };
+    private static final String[] LOCAIS = {
+        "financeiro", "RH", "TI", "vendas", "recepção", "almoxarifado", "diretoria",
+        "notebook", "sala 12", "sala 31", "filial norte", "filial sul", "ERP", "portal"
+    };
+    private static final String[] DETALHES = {
+        "Desde hoje de manhã.", "Já reiniciei e continua.", "Acontece com outros colegas também.",
+        "Aparece uma mensagem de erro.", "Preciso com urgência para o fechamento.", "Começou após a atualização."
+    };
+    private static final String[] TERMOS_BUSCA = {
+        "impressora", "VPN", "senha", "lento", "Wi-Fi", "planilha", "financeiro", "monitor", "CG0000", "acesso"
+    };
+
+    private final Properties config;
+
+    public GeradorCarga(Properties config) {
+        this.config = config;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.out.println("Uso: java GeradorCarga [popular] [executar]");
+            return;
+        }
+        GeradorCarga gerador = new GeradorCarga(RoteadorConexoes.carregarConfiguracao());
+        for (String comando : args) {
+            if ("popular".equals(comando)) {
+                gerador.popular();
+            } else if ("executar".equals(comando)) {
+                gerador.executar();
+            } else {
+                System.out.println("Comando desconhecido: " + comando);
+            }
+        }
+    }
+
+    private int inteiro(String chave, int padrao) {
+        return Integer.parseInt(config.getProperty(chave, String.valueOf(padrao)).trim());
+    }
+
+    // ---------------------------------------------------------------- população
+
+    public void popular() throws SQLException {
+        int totalUsuarios = inteiro("carga.usuarios", 2000);
+        int totalTickets = inteiro("carga.tickets", 1000000);
+        int diasHistorico = inteiro("carga.dias.historico", 730);
+        Random aleatorio = new Random(inteiro("carga.semente", 42));
+
+        long inicio = System.currentTimeMillis();
+        try (Connection conexao = Database.getConnection()) {
+            conexao.setAutoCommit(false);
+            popular(conexao, totalUsuarios, totalTickets, diasHistorico, aleatorio);
+        }
+        System.out.printf(Locale.ROOT, "População concluída em %.1f s%n", (System.currentTimeMillis() - inicio) / 1000.0);
+    }
+
+    private void popular(Connection conexao, int totalUsuarios, int totalTickets, int diasHistorico, Random aleatorio)
+            throws SQLException {
+        try {
+            int[] departamentos = lerIds(conexao, "SELECT id FROM departamentos");
+            int[] categorias = lerIds(conexao, "SELECT id FROM categorias WHERE ativa = TRUE");
+            int primeiroUsuario = maiorId(conexao, "usuarios") + 1;
+            int primeiroTicket = maiorId(conexao, "tickets") + 1;
+
+            List<Integer> solicitantes = new ArrayList<>();
+            List<Integer> tecnicos = new ArrayList<>();
+            inserirUsuarios(conexao, primeiroUsuario, totalUsuarios, departamentos, aleatorio, solicitantes, tecnicos);
+            conexao.commit();
+            System.out.println(totalUsuarios + " usuários inseridos");
+
+            // Poucos usuários e categorias concentram a maior parte dos tickets
+            Distribuicao status = new Distribuicao(8, 7, 10, 75);        // ABERTO, EM_ANDAMENTO, RESOLVIDO, FECHADO
+            Distribuicao prioridade = new Distribuicao(0, 30, 45, 20, 5); // índice = nível; BAIXA..CRITICA
+            Distribuicao categoria = Distribuicao.zipf(categorias.length);
+            Distribuicao solicitante = Distribuicao.zipf(solicitantes.size());
+
+            InsercaoEmLote tickets = new InsercaoEmLote(conexao, "INSERT INTO tickets (id, codigo, titulo, descricao, status, prioridade, "
+                    + "categoria_id, solicitante_id, responsavel_id, data_criacao, data_atualizacao, data_resolucao, data_fechamento)", 13);
+            InsercaoEmLote comentarios = new InsercaoEmLote(conexao,
+                    "INSERT INTO comentarios (ticket_id, usuario_id, conteudo, tipo, data_criacao)", 5, tickets);
+            InsercaoEmLote historico = new InsercaoEmLote(conexao, "INSERT INTO historico_tickets (ticket_id, usuario_id, acao, "
+                    + "campo_alterado, valor_anterior, valor_novo, data_alteracao)", 7, tickets);
+
+            long agora = System.currentTimeMillis();
+            long janelaMs = TimeUnit.DAYS.toMillis(diasHistorico);
+            Sistema.StatusTicket[] statusPorIndice = Sistema.StatusTicket.values();
+            Sistema.PrioridadeTicket[] prioridadePorNivel = new Sistema.PrioridadeTicket[5];
+            for (Sistema.PrioridadeTicket p : Sistema.PrioridadeTicket.values()) {
+                prioridadePorNivel[p.getNivel()] = p;
+            }
+
+            for (int n = 0; n < totalTickets; n++) {
+                int id = primeiroTicket + n;
+                Sistema.StatusTicket st = statusPorIndice[status.sortear(aleatorio)];
+                Sistema.PrioridadeTicket pr = prioridadePorNivel[prioridade.sortear(aleatorio)];
+                int solicitanteId = solicitantes.get(solicitante.sortear(aleatorio));
+                boolean emAberto = st == Sistema.StatusTicket.ABERTO || st == Sistema.StatusTicket.EM_ANDAMENTO;
+
+                // Tickets em aberto são recentes; o volume cresce ao longo do histórico
+                long idadeMs = emAberto
+                        ? (long) (aleatorio.nextDouble() * TimeUnit.DAYS.toMillis(30))
+                        : (long) ((1 - Math.sqrt(aleatorio.nextDouble())) * janelaMs);
+                long criacao = agora - idadeMs;
+                Integer responsavelId = st == Sistema.StatusTicket.ABERTO && aleatorio.nextInt(10) < 6
+                        ? null : tecnicos.get(aleatorio.nextInt(tecnicos.size()));
+                long resolucao = 0;
+                long fechamento = 0;
+                if (!emAberto) {
+                    resolucao = Math.min(agora, criacao + horasDeResolucao(pr, aleatorio));
+                    fechamento = st == Sistema.StatusTicket.FECHADO
+                            ? Math.min(agora, resolucao + (long) (aleatorio.nextDouble() * TimeUnit.DAYS.toMillis(7))) : 0;
+                }
+                long atualizacao = Math.max(criacao, Math.max(resolucao, fechamento));
+                String titulo = String.format(PROBLEMAS[aleatorio.nextInt(PROBLEMAS.length)], LOCAIS[aleatorio.nextInt(LOCAIS.length)]);
+
+                tickets.adicionar(id, String.format("CG%010d", id), titulo,
+                        titulo + ". " + DETALHES[aleatorio.nextInt(DETALHES.length)], st.name(), pr.name(),
+                        categorias[categoria.sortear(aleatorio)], solicitanteId, responsavelId, new Timestamp(criacao),
+                        new Timestamp(atualizacao), resolucao > 0 ? new Timestamp(resolucao) : null,
+                        fechamento > 0 ? new Timestamp(fechamento) : null);
+
+                historico.adicionar(id, solicitanteId, "CRIACAO", null, null, null, new Timestamp(criacao));
+                if (responsavelId != null) {
+                    historico.adicionar(id, responsavelId, "ALTERACAO_RESPONSAVEL", "responsavel_id", null,
+                            responsavelId.toString(), new Timestamp(criacao));
+                }
+                // Uma alteração de status por etapa até o status final, espaçadas até a última atualização
+                for (int etapa = 1; etapa <= st.ordinal(); etapa++) {
+                    long instante = criacao + (atualizacao - criacao) * etapa / st.ordinal();
+                    historico.adicionar(id, responsavelId != null ? responsavelId : 1, "ALTERACAO_STATUS", "status",
+                            statusPorIndice[etapa - 1].name(), statusPorIndice[etapa].name(), new Timestamp(instante));
+                }
+
+                // Quantidade geométrica de comentários, média de cerca de 1,5
+                int quantidade = 0;
+                while (quantidade < 20 && aleatorio.nextInt(5) < 3) {
+                    quantidade++;
+                }
+                for (int c = 0; c < quantidade; c++) {
+                    boolean doTecnico = responsavelId != null && aleatorio.nextBoolean();
+                    String tipo = doTecnico && aleatorio.nextInt(4) == 0
+                            ? Sistema.TipoComentario.INTERNO.name() : Sistema.TipoComentario.COMENTARIO.name();
+                    comentarios.adicionar(id, doTecnico ? responsavelId : solicitanteId, DETALHES[aleatorio.nextInt(DETALHES.length)],
+                            tipo, new Timestamp(criacao + (atualizacao - criacao) * (c + 1) / (quantidade + 1)));
+                }
+                if (resolucao > 0 && responsavelId != null) {
+                    comentarios.adicionar(id, responsavelId, "Problema resolvido.", Sistema.TipoComentario.RESOLUCAO.name(),
+                            new Timestamp(resolucao));
+                }
+
+                if ((n + 1) % TICKETS_POR_TRANSACAO == 0 || n + 1 == totalTickets) {
+                    // Cada lote filho grava os tickets pendentes antes de si
+                    comentarios.gravar();
+                    historico.gravar();
+                    conexao.commit();
+                    if ((n + 1) % 100000 == 0) {
+                        System.out.println((n + 1) + " tickets inseridos");
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            conexao.rollback();
+            throw e;
+        }
+    }
+
+    private void inserirUsuarios(Connection conexao, int primeiroId, int total, int[] departamentos, Random aleatorio,
+            List<Integer> solicitantes, List<Integer> tecnicos) throws SQLException {
+        InsercaoEmLote usuarios = new InsercaoEmLote(conexao,
+                "INSERT INTO usuarios (id, nome, email, senha, perfil, departamento_id, ativo)", 7);
+        String hashSenha = sha256Hex(SENHA_PADRAO);
+        for (int n = 0; n < total; n++) {
+            int id = primeiroId + n;
+            int sorteio = aleatorio.nextInt(100);
+            Sistema.PerfilUsuario perfil = sorteio < 85 ? Sistema.PerfilUsuario.USUARIO
+                    : sorteio < 97 ? Sistema.PerfilUsuario.TECNICO : Sistema.PerfilUsuario.ADMIN;
+            usuarios.adicionar(id, "Usuário Carga " + id, "carga" + id + "@carga.local", hashSenha, perfil.name(),
+                    departamentos.length > 0 ? departamentos[aleatorio.nextInt(departamentos.length)] : null, true);
+            solicitantes.add(id);
+            if (perfil == Sistema.PerfilUsuario.TECNICO) {
+                tecnicos.add(id);
+            }
+        }
+        if (tecnicos.isEmpty()) {
+            tecnicos.add(primeiroId);
+        }
+        usuarios.gravar();
+    }
+
+    // Tempo até a resolução: exponencial com média menor para prioridades mais altas
+    private static long horasDeResolucao(Sistema.PrioridadeTicket prioridade, Random aleatorio) {
+        double mediaHoras;
+        switch (prioridade) {
+            case CRITICA:
+                mediaHoras = 4;
+                break;
+            case ALTA:
+                mediaHoras = 12;
+                break;
+            case MEDIA:
+                mediaHoras = 36;
+                break;
+            default:
+                mediaHoras = 96;
+        }
+        return (long) (-Math.log(1 - aleatorio.nextDouble()) * mediaHoras * 3600000);
+    }
+
+    private static int[] lerIds(Connection conexao, String sql) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (Statement stmt = conexao.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                ids.add(rs.getInt(1));
+            }
+        }
+        int[] resultado = new int[ids.size()];
+        for (int i = 0; i < resultado.length; i++) {
+            resultado[i] = ids.get(i);
+        }
+        return resultado;
+    }
+
+    private static int maiorId(Connection conexao, String tabela) throws SQLException {
+        try (Statement stmt = conexao.createStatement(); ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM " + tabela)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static String sha256Hex(String texto) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(texto.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponível", e);
+        }
+    }
+
+    // ---------------------------------------------------------------- execução
+
+    public void executar() throws InterruptedException {
+        int conexoes = inteiro("carga.conexoes", 8);
+        int usuariosVirtuais = inteiro("carga.usuarios.virtuais", 500);
+        double taxa = Double.parseDouble(config.getProperty("carga.taxa.por.segundo", "200").trim());
+        long aquecimentoNs = TimeUnit.SECONDS.toNanos(inteiro("carga.aquecimento.segundos", 10));
+        long duracaoNs = TimeUnit.SECONDS.toNanos(inteiro("carga.duracao.segundos", 60));
+        Distribuicao mistura = lerMistura(config.getProperty("carga.mistura",
+                "criarTicket:10,buscarTickets:25,listarTickets:2,atualizarStatusTicket:23,estatisticas:40"));
+
+        // Cada trabalhador tem o próprio Sistema (conexão e índices em memória), como uma instância da aplicação
+        System.out.println("Iniciando " + conexoes + " instâncias do sistema...");
+        Sistema[] instancias = new Sistema[conexoes];
+        for (int i = 0; i < conexoes; i++) {
+            instancias[i] = new Sistema();
+        }
+        List<Sistema.Usuario> todos = new ArrayList<>(instancias[0].getUsuarios());
+        Collections.shuffle(todos);
+        List<Sistema.Usuario> virtuais = new ArrayList<>(todos.subList(0, Math.min(usuariosVirtuais, todos.size())));
+        List<Sistema.Usuario> atendentes = new ArrayList<>();
+        for (Sistema.Usuario usuario : todos) {
+            if (usuario.temPermissao(Sistema.Usuario.PERMISSAO_EDITAR_QUALQUER_TICKET)) {
+                atendentes.add(usuario);
+            }
+        }
+        List<Sistema.Categoria> categorias = instancias[0].getCategorias();
+        int[] categoriaIds = new int[categorias.size()];
+        for (int i = 0; i < categoriaIds.length; i++) {
+            categoriaIds[i] = categorias.get(i).getId();
+        }
+        int[] faixaIds = faixaDeTickets();
+
+        Metricas[] metricas = new Metricas[OPERACOES.length];
+        for (int i = 0; i < metricas.length; i++) {
+            metricas[i] = new Metricas();
+        }
+        LinkedBlockingQueue<Requisicao> fila = new LinkedBlockingQueue<>();
+        long inicio = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        long inicioMedicao = inicio + aquecimentoNs;
+        long fim = inicioMedicao + duracaoNs;
+
+        Thread[] trabalhadores = new Thread[conexoes];
+        for (int i = 0; i < conexoes; i++) {
+            Sistema sistema = instancias[i];
+            trabalhadores[i] = new Thread(() -> {
+                try {
+                    // Toda chegada prevista dentro da janela é atendida e medida, mesmo que termine depois
+                    // dela: descartar as lentas esconderia justamente a cauda da latência
+                    Requisicao requisicao;
+                    while ((requisicao = fila.take()) != Requisicao.FIM) {
+                        boolean ok = executarOperacao(sistema, requisicao, virtuais, atendentes, categoriaIds, faixaIds);
+                        long termino = System.nanoTime();
+                        if (requisicao.instantePrevisto >= inicioMedicao) {
+                            metricas[requisicao.operacao].registrar(termino - requisicao.instantePrevisto, ok);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "carga-" + i);
+            trabalhadores[i].start();
+        }
+
+        // Chegadas de Poisson: intervalos exponenciais, sem esperar pelas respostas
+        System.out.printf(Locale.ROOT, "Carga de %.0f req/s: %d s de aquecimento e %d s de medição%n", taxa,
+                TimeUnit.NANOSECONDS.toSeconds(aquecimentoNs), TimeUnit.NANOSECONDS.toSeconds(duracaoNs));
+        ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+        long proxima = inicio;
+        while (proxima < fim) {
+            long espera = proxima - System.nanoTime();
+            if (espera > 0) {
+                LockSupport.parkNanos(espera);
+            }
+            fila.add(new Requisicao(mistura.sortear(aleatorio), proxima));
+            proxima += (long) (-Math.log(1 - aleatorio.nextDouble()) / taxa * 1e9);
+        }
+        for (int i = 0; i < conexoes; i++) {
+            fila.add(Requisicao.FIM);
+        }
+        for (Thread trabalhador : trabalhadores) {
+            trabalhador.join();
+        }
+        relatar(metricas, duracaoNs, Math.max(0, System.nanoTime() - fim));
+    }
+
+    private boolean executarOperacao(Sistema sistema, Requisicao requisicao, List<Sistema.Usuario> virtuais,
+            List<Sistema.Usuario> atendentes, int[] categoriaIds, int[] faixaIds) {
+        ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+        String operacao = OPERACOES[requisicao.operacao];
+        // Só técnicos e administradores alteram status de qualquer ticket
+        List<Sistema.Usuario> candidatos = "atualizarStatusTicket".equals(operacao) && !atendentes.isEmpty() ? atendentes : virtuais;
+        sistema.setUsuarioLogado(candidatos.get(aleatorio.nextInt(candidatos.size())));
+        switch (operacao) {
+            case "criarTicket":
+                String titulo = String.format(PROBLEMAS[aleatorio.nextInt(PROBLEMAS.length)], LOCAIS[aleatorio.nextInt(LOCAIS.length)]);
+                return !sistema.criarTicket(titulo, titulo + ". " + DETALHES[aleatorio.nextInt(DETALHES.length)],
+                        String.valueOf(categoriaIds[aleatorio.nextInt(categoriaIds.length)])).startsWith("Erro");
+            case "buscarTickets":
+                sistema.buscarTickets(TERMOS_BUSCA[aleatorio.nextInt(TERMOS_BUSCA.length)]);
+                return true;
+            case "listarTickets":
+                sistema.listarTickets();
+                return true;
+            case "atualizarStatusTicket":
+                int id = faixaIds[0] + aleatorio.nextInt(Math.max(1, faixaIds[1] - faixaIds[0] + 1));
+                Sistema.StatusTicket[] status = Sistema.StatusTicket.values();
+                return !sistema.atualizarStatusTicket(String.valueOf(id), status[aleatorio.nextInt(status.length)]).startsWith("Erro");
+            default:
+                // As mesmas chamadas que o dashboard faz ao ser aberto
+                sistema.getEstatisticasStatus();
+                sistema.getEstatisticasPrioridade();
+                sistema.getTotalTickets();
+                sistema.getTicketsAbertos();
+                sistema.getTempoMedioResolucao();
+                return true;
+        }
+    }
+
+    private static int[] faixaDeTickets() {
+        try (Connection conexao = Database.getConnection(); Statement stmt = conexao.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT COALESCE(MIN(id), 1), COALESCE(MAX(id), 1) FROM tickets")) {
+            if (rs.next()) {
+                return new int[]{rs.getInt(1), rs.getInt(2)};
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new int[]{1, 1};
+    }
+
+    private static Distribuicao lerMistura(String mistura) {
+        double[] pesos = new double[OPERACOES.length];
+        for (String item : mistura.split(",")) {
+            String[] partes = item.trim().split(":");
+            int indice = Arrays.asList(OPERACOES).indexOf(partes[0].trim());
+            if (indice < 0) {
+                throw new IllegalArgumentException("Operação desconhecida em carga.mistura: " + partes[0]);
+            }
+            pesos[indice] = Double.parseDouble(partes[1].trim());
+        }
+        return new Distribuicao(pesos);
+    }
+
+    private static void relatar(Metricas[] metricas, long duracaoNs, long esvaziamentoNs) {
+        double segundos = duracaoNs / 1e9;
+        System.out.println();
+        System.out.printf(Locale.ROOT, "%-22s %10s %8s %10s %10s %10s %10s %10s%n",
+                "operação", "total", "erros", "req/s", "p50 ms", "p99 ms", "p999 ms", "máx ms");
+        long total = 0;
+        for (int i = 0; i < OPERACOES.length; i++) {
+            Metricas m = metricas[i];
+            long quantidade = m.quantidade.get();
+            total += quantidade;
+            if (quantidade == 0) {
+                continue;
+            }
+            System.out.printf(Locale.ROOT, "%-22s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+                    OPERACOES[i], quantidade, m.erros.get(), quantidade / segundos,
+                    m.percentil(0.50) / 1000.0, m.percentil(0.99) / 1000.0, m.percentil(0.999) / 1000.0, m.maximo.get() / 1000.0);
+        }
+        System.out.printf(Locale.ROOT, "%-22s %10d %8s %10.1f%n", "total", total, "", total / segundos);
+        if (esvaziamentoNs >= TimeUnit.SECONDS.toNanos(1)) {
+            // A fila acumulou durante a janela: o sistema não acompanhou a taxa de chegada
+            System.out.printf(Locale.ROOT, "Fila esvaziada %.1f s após o fim da janela%n", esvaziamentoNs / 1e9);
+        }
+    }
+
+    private static class Requisicao {
+
+        // Marca o fim das chegadas; cada trabalhador consome uma e termina
+        private static final Requisicao FIM = new Requisicao(-1, Long.MAX_VALUE);
+
+        private final int operacao;
+        private final long instantePrevisto;
+
+        Requisicao(int operacao, long instantePrevisto) {
+            this.operacao = operacao;
+            this.instantePrevisto = instantePrevisto;
+        }
+    }
+
+    /**
+     * Histograma de latências em microssegundos com buckets log-lineares: 64
+     * subdivisões por potência de dois, erro relativo de até ~1,5%.
+     */
+    private static class Metricas {
+
+        private static final int SUBDIVISOES = 64;
+        private static final int BUCKETS = SUBDIVISOES * 40;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong quantidade = new AtomicLong();
+        private final AtomicLong erros = new AtomicLong();
+        private final AtomicLong maximo = new AtomicLong();
+
+        void registrar(long latenciaNs, boolean ok) {
+            long micros = Math.max(0, latenciaNs / 1000);
+            buckets.incrementAndGet(Math.min(BUCKETS - 1, indice(micros)));
+            quantidade.incrementAndGet();
+            if (!ok) {
+                erros.incrementAndGet();
+            }
+            long atual;
+            while (micros > (atual = maximo.get()) && !maximo.compareAndSet(atual, micros)) {
+                // outra thread registrou um máximo ao mesmo tempo; tenta de novo
+            }
+        }
+
+        private static int indice(long micros) {
+            if (micros < SUBDIVISOES) {
+                return (int) micros;
+            }
+            int expoente = 63 - Long.numberOfLeadingZeros(micros) - 6;
+            return SUBDIVISOES * expoente + (int) (micros >>> expoente);
+        }
+
+        // Ponto médio do bucket
+        private static long valor(int indice) {
+            if (indice < SUBDIVISOES) {
+                return indice;
+            }
+            int expoente = indice / SUBDIVISOES - 1;
+            long base = (long) (indice % SUBDIVISOES + SUBDIVISOES) << expoente;
+            return base + ((1L << expoente) >> 1);
+        }
+
+        long percentil(double p) {
+            long alvo = (long) Math.ceil(p * quantidade.get());
+            long acumulado = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                acumulado += buckets.get(i);
+                if (acumulado >= alvo && acumulado > 0) {
+                    return Math.min(valor(i), maximo.get());
+                }
+            }
+            return maximo.get();
+        }
+    }
+
+    /** Sorteio de índices com pesos, por busca binária na soma acumulada. */
+    private static class Distribuicao {
+
+        private final double[] acumulado;
+
+        Distribuicao(double... pesos) {
+            acumulado = new double[pesos.length];
+            double soma = 0;
+            for (int i = 0; i < pesos.length; i++) {
+                soma += pesos[i];
+                acumulado[i] = soma;
+            }
+        }
+
+        // Peso 1/posição: o primeiro item é o mais frequente, com cauda longa
+        static Distribuicao zipf(int tamanho) {
+            double[] pesos = new double[tamanho];
+            for (int i = 0; i < tamanho; i++) {
+                pesos[i] = 1.0 / (i + 1);
+            }
+            return new Distribuicao(pesos);
+        }
+
+        int sortear(Random aleatorio) {
+            double alvo = aleatorio.nextDouble() * acumulado[acumulado.length - 1];
+            int posicao = Arrays.binarySearch(acumulado, alvo);
+            posicao = posicao >= 0 ? posicao + 1 : -posicao - 1;
+            // Pula itens de peso zero que empatam com o anterior
+            while (posicao < acumulado.length - 1 && acumulado[posicao] <= alvo) {
+                posicao++;
+            }
+            return Math.min(posicao, acumulado.length - 1);
+        }
+    }
+
+    /**
+     * Acumula linhas e grava um INSERT com várias linhas por comando, o que
+     * evita uma ida ao banco por linha mesmo sem rewriteBatchedStatements.
+     * Um lote com {@code pai} grava o pai antes de si, para que as linhas
+     * referenciadas pelas chaves estrangeiras já existam.
+     */
+    private static class InsercaoEmLote {
+
+        private final Connection conexao;
+        private final String prefixo;
+        private final int colunas;
+        private final InsercaoEmLote pai;
+        private final List<Object> valores = new ArrayList<>();
+        private String sqlCompleto;
+
+        InsercaoEmLote(Connection conexao, String prefixo, int colunas) {
+            this(conexao, prefixo, colunas, null);
+        }
+
+        InsercaoEmLote(Connection conexao, String prefixo, int colunas, InsercaoEmLote pai) {
+            this.conexao = conexao;
+            this.prefixo = prefixo;
+            this.colunas = colunas;
+            this.pai = pai;
+        }
+
+        void adicionar(Object... linha) throws SQLException {
+            valores.addAll(Arrays.asList(linha));
+            if (valores.size() >= LINHAS_POR_INSERT * colunas) {
+                gravar();
+            }
+        }
+
+        void gravar() throws SQLException {
+            if (pai != null) {
+                pai.gravar();
+            }
+            int linhas = valores.size() / colunas;
+            if (linhas == 0) {
+                return;
+            }
+            String sql;
+            if (linhas == LINHAS_POR_INSERT) {
+                if (sqlCompleto == null) {
+                    sqlCompleto = montarSql(linhas);
+                }
+                sql = sqlCompleto;
+            } else {
+                sql = montarSql(linhas);
+            }
+            try (PreparedStatement stmt = conexao.prepareStatement(sql)) {
+                for (int i = 0; i < valores.size(); i++) {
+                    stmt.setObject(i + 1, valores.get(i));
+                }
+                stmt.executeUpdate();
+            }
+            valores.clear();
+        }
+
+        private String montarSql(int linhas) {
+            StringBuilder linha = new StringBuilder("(");
+            for (int c = 0; c < colunas; c++) {
+                linha.append(c == 0 ? "?" : ", ?");
+            }
+            linha.append(")");
+            StringBuilder sql = new StringBuilder(prefixo).append(" VALUES ");
+            for (int i = 0; i < linhas; i++) {
+                sql.append(i == 0 ? "" : ", ").append(linha);
+            }
+            return sql.toString();
+        }
+    }
+}
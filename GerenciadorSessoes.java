@@ -0,0 +1,270 @@
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.sistemastickets.config.Database;
+
+/**
+ * Sessões de usuários autenticados. O login confere a senha uma única vez e
+ * emite um token "id.assinatura" (HMAC-SHA256); cada requisição depois disso
+ * é validada em memória. Sessões ociosas expiram, e ultimo_login é gravado
+ * em lote periodicamente em vez de a cada requisição.
+ *
+ * <p>Há uma única instância por processo (ver {@link #getInstancia}), com uma
+ * só chave e uma só thread de manutenção, compartilhada por todos os objetos
+ * {@link Sistema}.
+ *
+ * <p>O usuário de cada sessão é revalidado a cada
+ * {@value #INTERVALO_REVALIDACAO_SEGUNDOS} s contra uma cópia de usuarios
+ * atualizada pela data_atualizacao: usuários desativados perdem as sessões, e
+ * mudanças de perfil valem já na requisição seguinte.
+ */
+public class GerenciadorSessoes {
+
+    private static final String SQL_LOGIN = "SELECT * FROM usuarios WHERE email = ? AND ativo = TRUE";
+    private static final String SQL_ULTIMO_LOGIN = "UPDATE usuarios SET ultimo_login = ? WHERE id = ?";
+    private static final long INTERVALO_MANUTENCAO_SEGUNDOS = 60;
+    private static final long INTERVALO_REVALIDACAO_SEGUNDOS = 5;
+    private static final int BYTES_ID_SESSAO = 24;
+
+    private final Connection conexao;
+    private final long expiracaoMs;
+    private final SecureRandom aleatorio = new SecureRandom();
+    private final SecretKeySpec chave;
+    private final Map<String, Sessao> sessoes = new ConcurrentHashMap<>();
+    // usuário -> instante do último acesso ainda não gravado em ultimo_login
+    private final Map<Integer, Long> acessosPendentes = new ConcurrentHashMap<>();
+    private final CadastrosEmMemoria cadastros = new CadastrosEmMemoria();
+    private final ScheduledExecutorService manutencao;
+
+    private static GerenciadorSessoes instancia;
+
+    /**
+     * Instância do processo, criada na primeira chamada com conexão própria.
+     * Um shutdown hook chama {@link #fechar}, gravando os acessos pendentes.
+     */
+    public static synchronized GerenciadorSessoes getInstancia(long expiracaoMinutos) {
+        if (instancia == null) {
+            instancia = new GerenciadorSessoes(Database.getConnection(), expiracaoMinutos);
+            Runtime.getRuntime().addShutdownHook(new Thread(instancia::fechar, "fechar-sessoes"));
+        }
+        return instancia;
+    }
+
+    private GerenciadorSessoes(Connection conexao, long expiracaoMinutos) {
+        this.conexao = conexao;
+        this.expiracaoMs = TimeUnit.MINUTES.toMillis(expiracaoMinutos);
+        byte[] segredo = new byte[32];
+        aleatorio.nextBytes(segredo);
+        this.chave = new SecretKeySpec(segredo, "HmacSHA256");
+        this.manutencao = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+            Thread thread = new Thread(tarefa, "manutencao-sessoes");
+            thread.setDaemon(true);
+            return thread;
+        });
+        manutencao.scheduleWithFixedDelay(this::executarManutencao, INTERVALO_MANUTENCAO_SEGUNDOS,
+                INTERVALO_MANUTENCAO_SEGUNDOS, TimeUnit.SECONDS);
+        manutencao.scheduleWithFixedDelay(this::revalidarUsuarios, 0,
+                INTERVALO_REVALIDACAO_SEGUNDOS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Confere e-mail e senha (SHA-256 em hexadecimal, como gravado em
+     * usuarios.senha) e abre uma sessão. Retorna o token ou null.
+     */
+    public String login(String email, String senha) throws SQLException {
+        Sistema.Usuario usuario = null;
+        try (PreparedStatement stmt = conexao.prepareStatement(SQL_LOGIN)) {
+            stmt.setString(1, email);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next() && senhaConfere(senha, rs.getString("senha"))) {
+                    usuario = new Sistema.Usuario(
+                            rs.getInt("id"),
+                            rs.getString("nome"),
+                            rs.getString("email"),
+                            Sistema.PerfilUsuario.valueOf(rs.getString("perfil")),
+                            rs.getInt("departamento_id"),
+                            rs.getBoolean("ativo"),
+                            rs.getTimestamp("data_criacao")
+                    );
+                }
+            }
+        }
+        if (usuario == null) {
+            return null;
+        }
+        byte[] bytesId = new byte[BYTES_ID_SESSAO];
+        aleatorio.nextBytes(bytesId);
+        String id = Base64.getUrlEncoder().withoutPadding().encodeToString(bytesId);
+        long agora = System.currentTimeMillis();
+        sessoes.put(id, new Sessao(usuario, agora));
+        acessosPendentes.put(usuario.getId(), agora);
+        return id + "." + assinar(id);
+    }
+
+    /**
+     * Usuário da sessão do token, ou null se o token for inválido ou a
+     * sessão tiver expirado. Não acessa o banco.
+     */
+    public Sistema.Usuario validar(String token) {
+        if (token == null) {
+            return null;
+        }
+        int ponto = token.indexOf('.');
+        if (ponto <= 0) {
+            return null;
+        }
+        String id = token.substring(0, ponto);
+        byte[] assinatura = token.substring(ponto + 1).getBytes(StandardCharsets.US_ASCII);
+        if (!MessageDigest.isEqual(assinatura, assinar(id).getBytes(StandardCharsets.US_ASCII))) {
+            return null;
+        }
+        Sessao sessao = sessoes.get(id);
+        if (sessao == null) {
+            return null;
+        }
+        long agora = System.currentTimeMillis();
+        if (agora - sessao.ultimoAcesso > expiracaoMs) {
+            sessoes.remove(id, sessao);
+            return null;
+        }
+        sessao.ultimoAcesso = agora;
+        acessosPendentes.put(sessao.usuario.getId(), agora);
+        return sessao.usuario;
+    }
+
+    public void encerrar(String token) {
+        if (validar(token) != null) {
+            sessoes.remove(token.substring(0, token.indexOf('.')));
+        }
+    }
+
+    public int getTotalSessoes() {
+        return sessoes.size();
+    }
+
+    /** Encerra a manutenção periódica, gravando os acessos pendentes. */
+    public void fechar() {
+        manutencao.shutdown();
+        try {
+            // Espera uma manutenção em andamento terminar antes da gravação final
+            manutencao.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        gravarAcessosPendentes();
+    }
+
+    private void executarManutencao() {
+        long limite = System.currentTimeMillis() - expiracaoMs;
+        Iterator<Sessao> iterador = sessoes.values().iterator();
+        while (iterador.hasNext()) {
+            if (iterador.next().ultimoAcesso < limite) {
+                iterador.remove();
+            }
+        }
+        gravarAcessosPendentes();
+    }
+
+    /**
+     * Traz as alterações de usuarios e aplica às sessões abertas: encerra as
+     * de usuários desativados e troca o usuário das demais pela versão atual.
+     * Usuários ainda não vistos (criados depois da última leitura) ficam como
+     * estão até a próxima.
+     */
+    private void revalidarUsuarios() {
+        try {
+            cadastros.atualizar(conexao);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return;
+        }
+        Iterator<Sessao> iterador = sessoes.values().iterator();
+        while (iterador.hasNext()) {
+            Sessao sessao = iterador.next();
+            Sistema.Usuario atual = cadastros.getUsuario(sessao.usuario.getId());
+            if (atual == null) {
+                continue;
+            }
+            if (!atual.isAtivo()) {
+                iterador.remove();
+            } else {
+                sessao.usuario = atual;
+            }
+        }
+    }
+
+    private void gravarAcessosPendentes() {
+        if (acessosPendentes.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement stmt = conexao.prepareStatement(SQL_ULTIMO_LOGIN)) {
+            for (Integer usuarioId : acessosPendentes.keySet()) {
+                Long instante = acessosPendentes.remove(usuarioId);
+                if (instante != null) {
+                    stmt.setTimestamp(1, new Timestamp(instante));
+                    stmt.setInt(2, usuarioId);
+                    stmt.addBatch();
+                }
+            }
+            stmt.executeBatch();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private String assinar(String id) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(chave);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(mac.doFinal(id.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new IllegalStateException("HmacSHA256 indisponível", e);
+        }
+    }
+
+    private static boolean senhaConfere(String senha, String hashGravado) {
+        if (senha == null || hashGravado == null) {
+            return false;
+        }
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(senha.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return MessageDigest.isEqual(hex.toString().getBytes(StandardCharsets.US_ASCII),
+                    hashGravado.toLowerCase().getBytes(StandardCharsets.US_ASCII));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponível", e);
+        }
+    }
+
+    private static class Sessao {
+
+        private volatile Sistema.Usuario usuario;
+        private volatile long ultimoAcesso;
+
+        Sessao(Sistema.Usuario usuario, long ultimoAcesso) {
+            this.usuario = usuario;
+            this.ultimoAcesso = ultimoAcesso;
+        }
+    }
+}
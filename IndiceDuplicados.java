@@ -0,0 +1,246 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Índice MinHash + LSH sobre título e descrição dos tickets não fechados,
+ * usado para apontar possíveis duplicados na criação de um ticket. Cada
+ * ticket vira uma assinatura de {@value #NUM_HASHES} mínimos; assinaturas
+ * que coincidem em pelo menos uma banda são candidatas, e só elas têm a
+ * similaridade estimada. De cada balde entram só os
+ * {@value #CANDIDATOS_POR_BALDE} tickets mais recentes, o que limita uma
+ * busca a {@code BANDAS * CANDIDATOS_POR_BALDE} comparações mesmo quando
+ * muitos tickets seguem o mesmo modelo de texto. Há uma única instância
+ * por processo (ver {@link #getInstancia}).
+ */
+public class IndiceDuplicados {
+
+    private static final int NUM_HASHES = 96;
+    private static final int BANDAS = 32;
+    private static final int LINHAS_POR_BANDA = NUM_HASHES / BANDAS;
+    private static final int TAMANHO_SHINGLE = 4;
+    // Probabilidade de um par colidir em alguma banda: 1 - (1 - J^3)^32. O joelho da curva,
+    // (1/32)^(1/3) ~ 0,31, fica abaixo do limiar: J = 0,5 -> 0,986; J = 0,4 -> 0,88; J = 0,2 -> 0,23
+    private static final double SIMILARIDADE_MINIMA = 0.5;
+    // Textos com o mesmo modelo ("Impressora X não imprime") caem nos mesmos baldes, que chegam a
+    // dezenas de milhares de ids; um duplicado costuma ser recente, então os mais novos bastam
+    private static final int CANDIDATOS_POR_BALDE = 32;
+
+    private static final String SQL_CARGA = "SELECT id, titulo, descricao FROM tickets WHERE status != 'FECHADO'";
+
+    private static final int[] SEMENTES = new int[NUM_HASHES];
+
+    static {
+        int semente = 0x2545F491;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            semente = misturar(semente + 0x9E3779B9);
+            SEMENTES[i] = semente;
+        }
+    }
+
+    // Tickets já avaliados na busca em andamento, por thread: marcas[id] == rodada
+    private static final ThreadLocal<Visitados> VISITADOS = ThreadLocal.withInitial(Visitados::new);
+
+    private static IndiceDuplicados instancia;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final MapaIntParaListaInt[] bandas = new MapaIntParaListaInt[BANDAS];
+    private int[][] assinaturaPorTicket = new int[1024][];
+    private volatile boolean carregado;
+
+    /** Instância do processo, compartilhada por todos os objetos {@link Sistema}. */
+    public static synchronized IndiceDuplicados getInstancia() {
+        if (instancia == null) {
+            instancia = new IndiceDuplicados();
+        }
+        return instancia;
+    }
+
+    public IndiceDuplicados() {
+        for (int b = 0; b < BANDAS; b++) {
+            bandas[b] = new MapaIntParaListaInt();
+        }
+    }
+
+    // Tickets já indexados são ignorados, então uma carga interrompida pode ser refeita
+    public synchronized void carregar(Connection conexao) throws SQLException {
+        try (PreparedStatement stmt = conexao.prepareStatement(SQL_CARGA); ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                adicionar(rs.getInt("id"), rs.getString("titulo"), rs.getString("descricao"));
+            }
+        }
+        carregado = true;
+    }
+
+    public boolean isCarregado() {
+        return carregado;
+    }
+
+    public void adicionar(int ticketId, String titulo, String descricao) {
+        int[] assinatura = assinar(titulo, descricao);
+        lock.writeLock().lock();
+        try {
+            if (ticketId >= assinaturaPorTicket.length) {
+                assinaturaPorTicket = Arrays.copyOf(assinaturaPorTicket, Math.max(ticketId + 1, assinaturaPorTicket.length * 2));
+            }
+            if (assinaturaPorTicket[ticketId] != null) {
+                return;
+            }
+            assinaturaPorTicket[ticketId] = assinatura;
+            for (int b = 0; b < BANDAS; b++) {
+                bandas[b].adicionar(chaveDaBanda(assinatura, b), ticketId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remover(int ticketId) {
+        lock.writeLock().lock();
+        try {
+            if (ticketId >= assinaturaPorTicket.length || assinaturaPorTicket[ticketId] == null) {
+                return;
+            }
+            int[] assinatura = assinaturaPorTicket[ticketId];
+            for (int b = 0; b < BANDAS; b++) {
+                bandas[b].remover(chaveDaBanda(assinatura, b), ticketId);
+            }
+            assinaturaPorTicket[ticketId] = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ids de até {@code limite} tickets indexados cujo texto é provavelmente
+     * um duplicado do informado, do mais para o menos semelhante. A busca
+     * para assim que encontra {@code limite} tickets acima do limiar.
+     */
+    public int[] buscarSemelhantes(String titulo, String descricao, int limite) {
+        int[] assinatura = assinar(titulo, descricao);
+        int[] balde = new int[CANDIDATOS_POR_BALDE];
+        // Similaridade em milésimos nos bits altos e id nos baixos, para ordenar sem objetos
+        long[] encontrados = new long[Math.max(0, limite)];
+        int total = 0;
+        lock.readLock().lock();
+        try {
+            Visitados visitados = VISITADOS.get();
+            int rodada = visitados.novaRodada(assinaturaPorTicket.length);
+            for (int b = 0; b < BANDAS && total < limite; b++) {
+                int quantidade = bandas[b].copiarUltimos(chaveDaBanda(assinatura, b), CANDIDATOS_POR_BALDE, balde, 0);
+                for (int i = 0; i < quantidade && total < limite; i++) {
+                    int candidato = balde[i];
+                    if (visitados.marcas[candidato] == rodada) {
+                        continue;
+                    }
+                    visitados.marcas[candidato] = rodada;
+                    double similaridade = similaridade(assinatura, assinaturaPorTicket[candidato]);
+                    if (similaridade >= SIMILARIDADE_MINIMA) {
+                        encontrados[total++] = ((1000 - Math.round(similaridade * 1000)) << 32) | candidato;
+                    }
+                }
+            }
+            Arrays.sort(encontrados, 0, total);
+            int[] resultado = new int[total];
+            for (int i = 0; i < resultado.length; i++) {
+                resultado[i] = (int) encontrados[i];
+            }
+            return resultado;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static double similaridade(int[] a, int[] b) {
+        int iguais = 0;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            if (a[i] == b[i]) {
+                iguais++;
+            }
+        }
+        return (double) iguais / NUM_HASHES;
+    }
+
+    private static int chaveDaBanda(int[] assinatura, int banda) {
+        int h = banda;
+        for (int i = banda * LINHAS_POR_BANDA; i < (banda + 1) * LINHAS_POR_BANDA; i++) {
+            h = h * 31 + assinatura[i];
+        }
+        return misturar(h);
+    }
+
+    /** Assinatura MinHash dos shingles de caracteres do texto normalizado. */
+    static int[] assinar(String titulo, String descricao) {
+        String texto = normalizar((titulo != null ? titulo : "") + " " + (descricao != null ? descricao : ""));
+        int[] assinatura = new int[NUM_HASHES];
+        Arrays.fill(assinatura, Integer.MAX_VALUE);
+        int ultimoInicio = Math.max(0, texto.length() - TAMANHO_SHINGLE);
+        for (int inicio = 0; inicio <= ultimoInicio; inicio++) {
+            int shingle = 0x811C9DC5;
+            for (int i = inicio; i < Math.min(inicio + TAMANHO_SHINGLE, texto.length()); i++) {
+                shingle = (shingle ^ texto.charAt(i)) * 0x01000193;
+            }
+            for (int k = 0; k < NUM_HASHES; k++) {
+                int valor = misturar(shingle ^ SEMENTES[k]);
+                if (valor < assinatura[k]) {
+                    assinatura[k] = valor;
+                }
+            }
+        }
+        return assinatura;
+    }
+
+    // Minúsculas, sem acentos e com qualquer sequência de não alfanuméricos reduzida a um espaço
+    private static String normalizar(String texto) {
+        String semAcentos = Normalizer.normalize(texto.toLowerCase(), Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(semAcentos.length());
+        boolean espaco = true;
+        for (int i = 0; i < semAcentos.length(); i++) {
+            char c = semAcentos.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(c);
+                espaco = false;
+            } else if (!espaco) {
+                sb.append(' ');
+                espaco = true;
+            }
+        }
+        return sb.toString().trim();
+    }
+
+    // Evita limpar o array a cada busca: um id conta como visitado se a marca for a da rodada atual
+    private static class Visitados {
+
+        private int[] marcas = new int[1024];
+        private int rodada;
+
+        int novaRodada(int tamanho) {
+            if (marcas.length < tamanho) {
+                marcas = new int[tamanho];
+                rodada = 0;
+            }
+            if (++rodada == 0) {
+                Arrays.fill(marcas, 0);
+                rodada = 1;
+            }
+            return rodada;
+        }
+    }
+
+    // Finalizador do MurmurHash3
+    private static int misturar(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,220 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Índice secundário em memória dos tickets por solicitante e por
+ * responsável. Atende "meus tickets" e "tickets atribuídos a mim" sem
+ * consultar o banco. Há uma única instância por processo (ver
+ * {@link #getInstancia}); criarTicket e atribuirResponsavel a atualizam na
+ * hora, e {@link #atualizar} traz o que outras instâncias gravaram, pela
+ * data_atualizacao, como o {@link SnapshotColunarTickets}.
+ */
+public class IndiceTicketsPorUsuario {
+
+    // Consultas seguidas dentro deste intervalo usam o índice como está, sem ir ao banco
+    private static final long INTERVALO_ATUALIZACAO_MS = 1_000L;
+
+    // Tickets arquivados continuam pertencendo ao solicitante e ao responsável
+    private static final String SQL_CARGA = "SELECT id, solicitante_id, responsavel_id, data_atualizacao FROM tickets "
+            + "UNION ALL SELECT id, solicitante_id, responsavel_id, NULL FROM tickets_arquivo";
+    private static final String SQL_ALTERACOES = "SELECT id, solicitante_id, responsavel_id, data_atualizacao FROM tickets "
+            + "WHERE data_atualizacao >= ?";
+
+    private static IndiceTicketsPorUsuario instancia;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private MapaIntParaListaInt porSolicitante = new MapaIntParaListaInt();
+    private MapaIntParaListaInt porResponsavel = new MapaIntParaListaInt();
+    // solicitantePorTicket[id] e responsavelPorTicket[id] = valor indexado (0 = nenhum); tornam a
+    // reaplicação de uma linha inofensiva
+    private int[] solicitantePorTicket = new int[1024];
+    private int[] responsavelPorTicket = new int[1024];
+    private volatile boolean carregado;
+    private long marcaDagua;
+    private long ultimaAtualizacao;
+
+    /** Instância do processo, compartilhada por todos os objetos {@link Sistema}. */
+    public static synchronized IndiceTicketsPorUsuario getInstancia() {
+        if (instancia == null) {
+            instancia = new IndiceTicketsPorUsuario();
+        }
+        return instancia;
+    }
+
+    /** Reconstrói o índice inteiro a partir da tabela tickets. */
+    public synchronized void carregar(Connection conexao) throws SQLException {
+        MapaIntParaListaInt solicitantes = new MapaIntParaListaInt();
+        MapaIntParaListaInt responsaveis = new MapaIntParaListaInt();
+        int[] solicitanteAtual = new int[1024];
+        int[] responsavelAtual = new int[1024];
+        long marca = 0;
+        try (PreparedStatement stmt = conexao.prepareStatement(SQL_CARGA); ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                int ticketId = rs.getInt("id");
+                int solicitanteId = rs.getInt("solicitante_id");
+                int responsavelId = rs.getInt("responsavel_id");
+                solicitantes.adicionar(solicitanteId, ticketId);
+                solicitanteAtual = garantirPosicao(solicitanteAtual, ticketId);
+                solicitanteAtual[ticketId] = solicitanteId;
+                if (responsavelId != 0) {
+                    responsaveis.adicionar(responsavelId, ticketId);
+                    responsavelAtual = garantirPosicao(responsavelAtual, ticketId);
+                    responsavelAtual[ticketId] = responsavelId;
+                }
+                Timestamp atualizacao = rs.getTimestamp("data_atualizacao");
+                if (atualizacao != null) {
+                    marca = Math.max(marca, atualizacao.getTime());
+                }
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            this.porSolicitante = solicitantes;
+            this.porResponsavel = responsaveis;
+            this.solicitantePorTicket = solicitanteAtual;
+            this.responsavelPorTicket = responsavelAtual;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        marcaDagua = marca;
+        ultimaAtualizacao = System.currentTimeMillis();
+        carregado = true;
+    }
+
+    public boolean isCarregado() {
+        return carregado;
+    }
+
+    /**
+     * Aplica os tickets criados ou reatribuídos desde a última leitura,
+     * inclusive por outras instâncias, relendo a mesma janela antes da marca
+     * d'água que o snapshot colunar. A consulta roda fora do lock de escrita.
+     */
+    public synchronized void atualizar(Connection conexao) throws SQLException {
+        long agora = System.currentTimeMillis();
+        if (!carregado || agora - ultimaAtualizacao < INTERVALO_ATUALIZACAO_MS) {
+            return;
+        }
+        int[] linhas = new int[3 * 64];
+        int quantidade = 0;
+        long novaMarca = marcaDagua;
+        try (PreparedStatement stmt = conexao.prepareStatement(SQL_ALTERACOES)) {
+            stmt.setTimestamp(1, new Timestamp(Math.max(0, marcaDagua - SnapshotColunarTickets.JANELA_RELEITURA_MS)));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (3 * quantidade == linhas.length) {
+                        linhas = Arrays.copyOf(linhas, linhas.length * 2);
+                    }
+                    linhas[3 * quantidade] = rs.getInt("id");
+                    linhas[3 * quantidade + 1] = rs.getInt("solicitante_id");
+                    linhas[3 * quantidade + 2] = rs.getInt("responsavel_id");
+                    quantidade++;
+                    novaMarca = Math.max(novaMarca, rs.getTimestamp("data_atualizacao").getTime());
+                }
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < quantidade; i++) {
+                aplicarSolicitante(linhas[3 * i], linhas[3 * i + 1]);
+                aplicarResponsavel(linhas[3 * i], linhas[3 * i + 2]);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        marcaDagua = novaMarca;
+        ultimaAtualizacao = agora;
+    }
+
+    private static int[] garantirPosicao(int[] array, int posicao) {
+        return posicao < array.length ? array : Arrays.copyOf(array, Math.max(posicao + 1, array.length * 2));
+    }
+
+    public void registrarCriacao(int ticketId, int solicitanteId) {
+        lock.writeLock().lock();
+        try {
+            aplicarSolicitante(ticketId, solicitanteId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void registrarAtribuicao(int ticketId, int responsavelId) {
+        lock.writeLock().lock();
+        try {
+            aplicarResponsavel(ticketId, responsavelId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Os dois métodos abaixo devem ser chamados com o lock de escrita adquirido
+    private void aplicarSolicitante(int ticketId, int solicitanteId) {
+        solicitantePorTicket = garantirPosicao(solicitantePorTicket, ticketId);
+        int anterior = solicitantePorTicket[ticketId];
+        if (anterior == solicitanteId) {
+            return;
+        }
+        if (anterior != 0) {
+            porSolicitante.remover(anterior, ticketId);
+        }
+        porSolicitante.adicionar(solicitanteId, ticketId);
+        solicitantePorTicket[ticketId] = solicitanteId;
+    }
+
+    private void aplicarResponsavel(int ticketId, int responsavelId) {
+        responsavelPorTicket = garantirPosicao(responsavelPorTicket, ticketId);
+        int anterior = responsavelPorTicket[ticketId];
+        if (anterior == responsavelId) {
+            return;
+        }
+        if (anterior != 0) {
+            porResponsavel.remover(anterior, ticketId);
+        }
+        if (responsavelId != 0) {
+            porResponsavel.adicionar(responsavelId, ticketId);
+        }
+        responsavelPorTicket[ticketId] = responsavelId;
+    }
+
+    public int contarPorSolicitante(int usuarioId) {
+        lock.readLock().lock();
+        try {
+            return porSolicitante.contar(usuarioId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int[] idsPorSolicitante(int usuarioId) {
+        lock.readLock().lock();
+        try {
+            return porSolicitante.valores(usuarioId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int contarPorResponsavel(int usuarioId) {
+        lock.readLock().lock();
+        try {
+            return porResponsavel.contar(usuarioId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int[] idsPorResponsavel(int usuarioId) {
+        lock.readLock().lock();
+        try {
+            return porResponsavel.valores(usuarioId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
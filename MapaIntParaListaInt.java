@@ -0,0 +1,171 @@
+import java.util.Arrays;
+
+/**
+ * Mapa de chave int para uma lista compacta de valores int, com
+ * endereçamento aberto e sondagem linear. Não usa objetos boxed; cada chave
+ * ocupa uma posição nos arrays paralelos. Não é thread-safe.
+ */
+public class MapaIntParaListaInt {
+
+    private static final int CAPACIDADE_MINIMA = 16;
+    private static final int CAPACIDADE_LISTA_INICIAL = 4;
+    private static final int[] VAZIO = new int[0];
+
+    private int[] chaves;
+    private int[][] listas; // null = posição livre
+    private int[] tamanhos;
+    private int quantidadeChaves;
+
+    public MapaIntParaListaInt() {
+        this(CAPACIDADE_MINIMA);
+    }
+
+    public MapaIntParaListaInt(int chavesEsperadas) {
+        int capacidade = CAPACIDADE_MINIMA;
+        while (capacidade * 3 < chavesEsperadas * 4) {
+            capacidade <<= 1;
+        }
+        alocar(capacidade);
+    }
+
+    private void alocar(int capacidade) {
+        chaves = new int[capacidade];
+        listas = new int[capacidade][];
+        tamanhos = new int[capacidade];
+    }
+
+    private static int espalhar(int chave) {
+        int h = chave * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int posicaoDe(int chave) {
+        int mascara = chaves.length - 1;
+        int i = espalhar(chave) & mascara;
+        while (listas[i] != null) {
+            if (chaves[i] == chave) {
+                return i;
+            }
+            i = (i + 1) & mascara;
+        }
+        return -1 - i;
+    }
+
+    public void adicionar(int chave, int valor) {
+        int i = posicaoDe(chave);
+        if (i < 0) {
+            if ((quantidadeChaves + 1) * 4 > chaves.length * 3) {
+                redimensionar(chaves.length << 1);
+                i = posicaoDe(chave);
+            }
+            i = -1 - i;
+            chaves[i] = chave;
+            listas[i] = new int[CAPACIDADE_LISTA_INICIAL];
+            quantidadeChaves++;
+        }
+        int[] lista = listas[i];
+        if (tamanhos[i] == lista.length) {
+            lista = Arrays.copyOf(lista, lista.length + (lista.length >> 1) + 1);
+            listas[i] = lista;
+        }
+        lista[tamanhos[i]++] = valor;
+    }
+
+    /**
+     * Remove uma ocorrência do valor na lista da chave. Quando a lista fica
+     * vazia a chave é removida do mapa.
+     */
+    public boolean remover(int chave, int valor) {
+        int i = posicaoDe(chave);
+        if (i < 0) {
+            return false;
+        }
+        int[] lista = listas[i];
+        int tamanho = tamanhos[i];
+        for (int j = 0; j < tamanho; j++) {
+            if (lista[j] == valor) {
+                System.arraycopy(lista, j + 1, lista, j, tamanho - j - 1);
+                tamanhos[i] = --tamanho;
+                if (tamanho == 0) {
+                    removerPosicao(i);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Remoção com deslocamento para trás, para não deixar marcadores na sondagem
+    private void removerPosicao(int livre) {
+        int mascara = chaves.length - 1;
+        int i = livre;
+        while (true) {
+            i = (i + 1) & mascara;
+            if (listas[i] == null) {
+                break;
+            }
+            int ideal = espalhar(chaves[i]) & mascara;
+            if (((i - ideal) & mascara) >= ((i - livre) & mascara)) {
+                chaves[livre] = chaves[i];
+                listas[livre] = listas[i];
+                tamanhos[livre] = tamanhos[i];
+                livre = i;
+            }
+        }
+        listas[livre] = null;
+        tamanhos[livre] = 0;
+        quantidadeChaves--;
+    }
+
+    private void redimensionar(int capacidade) {
+        int[] chavesAntigas = chaves;
+        int[][] listasAntigas = listas;
+        int[] tamanhosAntigos = tamanhos;
+        alocar(capacidade);
+        int mascara = capacidade - 1;
+        for (int j = 0; j < chavesAntigas.length; j++) {
+            if (listasAntigas[j] != null) {
+                int i = espalhar(chavesAntigas[j]) & mascara;
+                while (listas[i] != null) {
+                    i = (i + 1) & mascara;
+                }
+                chaves[i] = chavesAntigas[j];
+                listas[i] = listasAntigas[j];
+                tamanhos[i] = tamanhosAntigos[j];
+            }
+        }
+    }
+
+    public int contar(int chave) {
+        int i = posicaoDe(chave);
+        return i < 0 ? 0 : tamanhos[i];
+    }
+
+    /** Cópia dos valores associados à chave, na ordem de inserção. */
+    public int[] valores(int chave) {
+        int i = posicaoDe(chave);
+        return i < 0 ? VAZIO : Arrays.copyOf(listas[i], tamanhos[i]);
+    }
+
+    /**
+     * Copia para {@code destino}, a partir de {@code inicio}, até
+     * {@code maximo} valores da chave, do mais recente para o mais antigo,
+     * sem copiar a lista inteira. Retorna quantos foram copiados.
+     */
+    public int copiarUltimos(int chave, int maximo, int[] destino, int inicio) {
+        int i = posicaoDe(chave);
+        if (i < 0) {
+            return 0;
+        }
+        int[] lista = listas[i];
+        int quantidade = Math.min(maximo, tamanhos[i]);
+        for (int j = 0; j < quantidade; j++) {
+            destino[inicio + j] = lista[tamanhos[i] - 1 - j];
+        }
+        return quantidade;
+    }
+
+    public int getQuantidadeChaves() {
+        return quantidadeChaves;
+    }
+}
@@ -0,0 +1,168 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Separa leituras e escritas: escritas (e leituras logo após uma escrita) vão
+ * para o primário; consultas de relatório vão para as réplicas configuradas
+ * em config.properties, desde que o atraso de replicação esteja dentro do
+ * limite. Sem réplicas disponíveis, tudo cai para o primário.
+ */
+public class RoteadorConexoes {
+
+    private static final String ARQUIVO_CONFIGURACAO = "config.properties";
+    private static final long INTERVALO_VERIFICACAO_MS = 2000;
+
+    private final Connection primario;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long atrasoMaximoMs;
+    private final AtomicInteger proxima = new AtomicInteger();
+    private volatile long ultimaEscrita;
+
+    public RoteadorConexoes(Connection primario, Properties config) {
+        this.primario = primario;
+        this.atrasoMaximoMs = Long.parseLong(config.getProperty("db.replica.atraso.maximo.segundos", "5").trim()) * 1000;
+        String usuario = config.getProperty("db.replica.user", config.getProperty("db.user", ""));
+        String senha = config.getProperty("db.replica.password", config.getProperty("db.password", ""));
+        for (String url : config.getProperty("db.replicas", "").split(",")) {
+            if (!url.trim().isEmpty()) {
+                replicas.add(new Replica(url.trim(), usuario, senha));
+            }
+        }
+    }
+
+    public static Properties carregarConfiguracao() {
+        Properties config = new Properties();
+        try (InputStream entrada = new FileInputStream(ARQUIVO_CONFIGURACAO)) {
+            config.load(entrada);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return config;
+    }
+
+    /** Conexão para escritas. Marca o início da janela de leitura no primário. */
+    public Connection paraEscrita() {
+        ultimaEscrita = System.currentTimeMillis();
+        return primario;
+    }
+
+    /**
+     * Executa uma consulta de relatório numa réplica. Se a consulta falhar na
+     * réplica, ela sai de uso até a próxima verificação e a consulta é
+     * repetida no primário; por isso a leitura não deve deixar efeitos de uma
+     * execução parcial. Logo após uma escrita desta instância a leitura fica
+     * no primário, para que o usuário veja o que acabou de gravar mesmo que a
+     * réplica ainda não tenha recebido.
+     */
+    public <T> T ler(Leitura<T> leitura) throws SQLException {
+        // O atraso é medido a cada INTERVALO_VERIFICACAO_MS e pode crescer nesse meio tempo
+        if (!replicas.isEmpty() && System.currentTimeMillis() - ultimaEscrita >= atrasoMaximoMs + INTERVALO_VERIFICACAO_MS) {
+            int inicio = Math.floorMod(proxima.getAndIncrement(), replicas.size());
+            for (int i = 0; i < replicas.size(); i++) {
+                Replica replica = replicas.get((inicio + i) % replicas.size());
+                Connection conexao = replica.conexaoSeDisponivel(atrasoMaximoMs);
+                if (conexao != null) {
+                    try {
+                        return leitura.executar(conexao);
+                    } catch (SQLException e) {
+                        e.printStackTrace();
+                        replica.marcarIndisponivel(conexao);
+                        break;
+                    }
+                }
+            }
+        }
+        return leitura.executar(primario);
+    }
+
+    /** Consulta executada por {@link #ler}, numa réplica ou no primário. */
+    public interface Leitura<T> {
+        T executar(Connection conexao) throws SQLException;
+    }
+
+    private static class Replica {
+
+        private final String url;
+        private final String usuario;
+        private final String senha;
+        private Connection conexao;
+        private boolean disponivel;
+        private long ultimaVerificacao;
+
+        Replica(String url, String usuario, String senha) {
+            this.url = url;
+            this.usuario = usuario;
+            this.senha = senha;
+        }
+
+        // O atraso é verificado no máximo a cada INTERVALO_VERIFICACAO_MS
+        synchronized Connection conexaoSeDisponivel(long atrasoMaximoMs) {
+            long agora = System.currentTimeMillis();
+            if (agora - ultimaVerificacao >= INTERVALO_VERIFICACAO_MS) {
+                ultimaVerificacao = agora;
+                try {
+                    if (conexao == null || conexao.isClosed()) {
+                        conexao = DriverManager.getConnection(url, usuario, senha);
+                    }
+                    long atrasoMs = consultarAtrasoSegundos() * 1000;
+                    disponivel = atrasoMs >= 0 && atrasoMs <= atrasoMaximoMs;
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                    disponivel = false;
+                    fechar();
+                }
+            }
+            return disponivel ? conexao : null;
+        }
+
+        // Uma consulta falhou: a réplica fica fora de uso até a próxima verificação, que reabre a conexão
+        synchronized void marcarIndisponivel(Connection conexaoComFalha) {
+            if (conexao == conexaoComFalha) {
+                disponivel = false;
+                ultimaVerificacao = System.currentTimeMillis();
+                fechar();
+            }
+        }
+
+        /**
+         * Atraso de replicação em segundos, ou -1 se a replicação estiver
+         * parada. Uma instância sem replicação configurada (por exemplo, uma
+         * cópia local para testes) é tratada como sem atraso.
+         */
+        private long consultarAtrasoSegundos() throws SQLException {
+            try (Statement stmt = conexao.createStatement(); ResultSet rs = stmt.executeQuery("SHOW REPLICA STATUS")) {
+                return rs.next() ? atraso(rs.getObject("Seconds_Behind_Source")) : 0;
+            } catch (SQLException e) {
+                // Servidores anteriores ao MySQL 8.0.22 só conhecem a sintaxe antiga
+                try (Statement stmt = conexao.createStatement(); ResultSet rs = stmt.executeQuery("SHOW SLAVE STATUS")) {
+                    return rs.next() ? atraso(rs.getObject("Seconds_Behind_Master")) : 0;
+                }
+            }
+        }
+
+        private static long atraso(Object segundos) {
+            return segundos == null ? -1 : ((Number) segundos).longValue();
+        }
+
+        private void fechar() {
+            if (conexao != null) {
+                try {
+                    conexao.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+                conexao = null;
+            }
+        }
+    }
+}
@@ -58,7 +58,9 @@ CREATE TABLE tickets (
     INDEX idx_prioridade (prioridade),
     INDEX idx_solicitante (solicitante_id),
     INDEX idx_responsavel (responsavel_id),
-    INDEX idx_data_criacao (data_criacao)
+    INDEX idx_data_criacao (data_criacao),
+    INDEX idx_data_atualizacao (data_atualizacao),
+    INDEX idx_data_fechamento (data_fechamento)
 );
 
 CREATE TABLE comentarios (
@@ -130,6 +132,69 @@ CREATE TABLE configuracoes (
     data_atualizacao TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
 );
 
+-- Tabelas de arquivo: tickets fechados há mais de 'dias_arquivamento' dias e seus dados relacionados
+CREATE TABLE tickets_arquivo (
+    id INT PRIMARY KEY,
+    codigo VARCHAR(20) NOT NULL UNIQUE,
+    titulo VARCHAR(255) NOT NULL,
+    descricao TEXT NOT NULL,
+    status ENUM('ABERTO', 'EM_ANDAMENTO', 'RESOLVIDO', 'FECHADO') NOT NULL,
+    prioridade ENUM('BAIXA', 'MEDIA', 'ALTA', 'CRITICA') NOT NULL,
+    categoria_id INT NOT NULL,
+    solicitante_id INT NOT NULL,
+    responsavel_id INT NULL,
+    data_criacao TIMESTAMP NULL,
+    data_atualizacao TIMESTAMP NULL,
+    data_resolucao TIMESTAMP NULL,
+    data_fechamento TIMESTAMP NULL,
+    data_arquivamento TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    INDEX idx_solicitante (solicitante_id),
+    INDEX idx_responsavel (responsavel_id),
+    INDEX idx_data_fechamento (data_fechamento),
+    INDEX idx_data_arquivamento (data_arquivamento)
+);
+
+CREATE TABLE comentarios_arquivo (
+    id INT PRIMARY KEY,
+    ticket_id INT NOT NULL,
+    usuario_id INT NOT NULL,
+    conteudo TEXT NOT NULL,
+    tipo ENUM('COMENTARIO', 'RESOLUCAO', 'INTERNO'),
+    data_criacao TIMESTAMP NULL,
+    INDEX idx_ticket (ticket_id)
+);
+
+CREATE TABLE anexos_arquivo (
+    id INT PRIMARY KEY,
+    ticket_id INT NOT NULL,
+    nome_original VARCHAR(255) NOT NULL,
+    nome_arquivo VARCHAR(255) NOT NULL,
+    tamanho INT NOT NULL,
+    tipo_mime VARCHAR(100),
+    caminho VARCHAR(500) NOT NULL,
+    data_upload TIMESTAMP NULL,
+    usuario_id INT NOT NULL,
+    INDEX idx_ticket (ticket_id)
+);
+
+CREATE TABLE ticket_tags_arquivo (
+    ticket_id INT NOT NULL,
+    tag_id INT NOT NULL,
+    PRIMARY KEY (ticket_id, tag_id)
+);
+
+CREATE TABLE historico_tickets_arquivo (
+    id INT PRIMARY KEY,
+    ticket_id INT NOT NULL,
+    usuario_id INT NOT NULL,
+    acao VARCHAR(100) NOT NULL,
+    campo_alterado VARCHAR(50),
+    valor_anterior TEXT,
+    valor_novo TEXT,
+    data_alteracao TIMESTAMP NULL,
+    INDEX idx_ticket (ticket_id)
+);
+
 DELIMITER //
 CREATE TRIGGER atualizar_data_resolucao 
 BEFORE UPDATE ON tickets
@@ -248,7 +313,10 @@ INSERT INTO configuracoes (chave, valor, descricao, tipo) VALUES
 ('tickets_por_pagina', '20', 'Número de tickets por página', 'NUMBER'),
 ('email_notificacoes', 'true', 'Enviar notificações por email', 'BOOLEAN'),
 ('tempo_auto_fechamento', '72', 'Horas para fechamento automático após resolução', 'NUMBER'),
-('prioridade_padrao', 'MEDIA', 'Prioridade padrão para novos tickets', 'STRING');
+('prioridade_padrao', 'MEDIA', 'Prioridade padrão para novos tickets', 'STRING'),
+('dias_arquivamento', '365', 'Dias após o fechamento para mover o ticket para o arquivo', 'NUMBER'),
+('marcar_recorrentes', 'true', 'Marcar com a tag Recorrente os tickets detectados como possíveis duplicados', 'BOOLEAN'),
+('atribuicao_automatica', 'true', 'Atribuir novos tickets automaticamente ao técnico com menor carga', 'BOOLEAN');
 
 DELIMITER //
 CREATE PROCEDURE sp_criar_ticket(
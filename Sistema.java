@@ -1,6 +1,9 @@
 
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -13,6 +16,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -280,6 +284,11 @@ public class Sistema {
 
     public static class Usuario {
 
+        // Permissões pré-calculadas a partir do perfil, para checagens por requisição sem acesso ao banco
+        public static final int PERMISSAO_EDITAR_QUALQUER_TICKET = 1;
+        public static final int PERMISSAO_ASSUMIR_TICKET = 1 << 1;
+        public static final int PERMISSAO_ADMINISTRAR = 1 << 2;
+
         private int id;
         private String nome;
         private String email;
@@ -287,6 +296,7 @@ public class Sistema {
         private int departamentoId;
         private boolean ativo;
         private LocalDateTime dataCriacao;
+        private int permissoes;
 
         public Usuario(int id, String nome, String email, PerfilUsuario perfil, int departamentoId, boolean ativo, Timestamp dataCriacao) {
             this.id = id;
@@ -296,6 +306,18 @@ public class Sistema {
             this.departamentoId = departamentoId;
             this.ativo = ativo;
             this.dataCriacao = dataCriacao.toLocalDateTime();
+            this.permissoes = calcularPermissoes(perfil);
+        }
+
+        private static int calcularPermissoes(PerfilUsuario perfil) {
+            switch (perfil) {
+                case ADMIN:
+                    return PERMISSAO_EDITAR_QUALQUER_TICKET | PERMISSAO_ASSUMIR_TICKET | PERMISSAO_ADMINISTRAR;
+                case TECNICO:
+                    return PERMISSAO_EDITAR_QUALQUER_TICKET | PERMISSAO_ASSUMIR_TICKET;
+                default:
+                    return 0;
+            }
         }
 
         // Getters e Setters
@@ -325,6 +347,7 @@ public class Sistema {
 
         public void setPerfil(PerfilUsuario perfil) {
             this.perfil = perfil;
+            this.permissoes = calcularPermissoes(perfil);
         }
 
         public int getDepartamentoId() {
@@ -347,14 +370,21 @@ public class Sistema {
             return dataCriacao;
         }
 
+        public int getPermissoes() {
+            return permissoes;
+        }
+
+        public boolean temPermissao(int permissao) {
+            return (permissoes & permissao) == permissao;
+        }
+
         public boolean podeEditarTicket(Ticket ticket) {
-            return perfil == PerfilUsuario.ADMIN
-                    || perfil == PerfilUsuario.TECNICO
+            return temPermissao(PERMISSAO_EDITAR_QUALQUER_TICKET)
                     || ticket.getSolicitanteId() == this.id;
         }
 
         public boolean podeAssumirTicket() {
-            return perfil == PerfilUsuario.ADMIN || perfil == PerfilUsuario.TECNICO;
+            return temPermissao(PERMISSAO_ASSUMIR_TICKET);
         }
     }
 
@@ -460,16 +490,139 @@ public class Sistema {
         }
     }
 
+    public static class Anexo {
+
+        private int id;
+        private int ticketId;
+        private String nomeOriginal;
+        private String nomeArquivo;
+        private int tamanho;
+        private String tipoMime;
+        private String caminho;
+        private LocalDateTime dataUpload;
+        private int usuarioId;
+
+        public Anexo(int id, int ticketId, String nomeOriginal, String nomeArquivo, int tamanho, String tipoMime, String caminho, Timestamp dataUpload, int usuarioId) {
+            this.id = id;
+            this.ticketId = ticketId;
+            this.nomeOriginal = nomeOriginal;
+            this.nomeArquivo = nomeArquivo;
+            this.tamanho = tamanho;
+            this.tipoMime = tipoMime;
+            this.caminho = caminho;
+            this.dataUpload = dataUpload.toLocalDateTime();
+            this.usuarioId = usuarioId;
+        }
+
+        // Getters
+        public int getId() {
+            return id;
+        }
+
+        public int getTicketId() {
+            return ticketId;
+        }
+
+        public String getNomeOriginal() {
+            return nomeOriginal;
+        }
+
+        // Hash SHA-256 do conteúdo, que também é o endereço no armazenamento
+        public String getNomeArquivo() {
+            return nomeArquivo;
+        }
+
+        public int getTamanho() {
+            return tamanho;
+        }
+
+        public String getTipoMime() {
+            return tipoMime;
+        }
+
+        public String getCaminho() {
+            return caminho;
+        }
+
+        public LocalDateTime getDataUpload() {
+            return dataUpload;
+        }
+
+        public int getUsuarioId() {
+            return usuarioId;
+        }
+    }
+
     // Atributos principais do sistema
+    private static final int LIMITE_DUPLICADOS = 5;
+
     private Connection conexao;
+    // Escritas vão para o primário (conexao); relatórios podem ir para réplicas
+    private RoteadorConexoes roteador;
+    private ArmazenamentoAnexos armazenamentoAnexos;
+    private GerenciadorSessoes sessoes;
     private Usuario usuarioLogado;
+    private final SnapshotColunarTickets snapshotTickets = new SnapshotColunarTickets();
+    private final CadastrosEmMemoria cadastros = new CadastrosEmMemoria();
+    // Verdadeiro depois que o snapshot recebeu dados (do banco ou de um arquivo)
+    private volatile boolean snapshotDisponivel;
+
+    // Índices sobre a tabela tickets, carregados em segundo plano para não atrasar a inicialização.
+    // Quem os usa chama garantirIndices(), que espera a carga em andamento ou a refaz se falhou.
+    // Os índices do processo são compartilhados entre as instâncias e carregados uma só vez.
+    private static final Object LOCK_INDICES = new Object();
+    private static volatile boolean indicesCarregados;
+    private final IndiceTicketsPorUsuario indiceUsuarios = IndiceTicketsPorUsuario.getInstancia();
+    private final IndiceDuplicados indiceDuplicados = IndiceDuplicados.getInstancia();
+    private final DespachoTickets despacho = DespachoTickets.getInstancia();
 
     // Construtor
     public Sistema() {
         this.conexao = Database.getConnection();
-        // Define um usuário logado padrão para fins de teste.
-        // Em um sistema real, isso viria de uma tela de login.
-        this.usuarioLogado = buscarUsuarioPorId("1"); // admin
+        Properties config = RoteadorConexoes.carregarConfiguracao();
+        this.roteador = new RoteadorConexoes(conexao, config);
+        this.armazenamentoAnexos = new ArmazenamentoAnexos(Paths.get(config.getProperty("anexos.diretorio", "data/anexos")));
+        this.sessoes = GerenciadorSessoes.getInstancia(Long.parseLong(config.getProperty("sessao.expiracao.minutos", "30").trim()));
+        // Nenhum usuário logado até login() ou autenticar() com o token da sessão
+        this.usuarioLogado = null;
+        Thread cargaIndices = new Thread(this::garantirIndices, "carga-indices");
+        cargaIndices.setDaemon(true);
+        cargaIndices.start();
+    }
+
+    /**
+     * Carrega os índices por usuário, de duplicados e a fila de despacho, numa
+     * conexão própria. Enquanto uma carga está em andamento as escritas esperam
+     * aqui, para que nenhuma alteração fique de fora do que está sendo lido.
+     * Retorna false se o banco não estiver acessível; nesse caso as escritas
+     * seguem sem atualizar os índices, e a próxima carga já as inclui.
+     */
+    private boolean garantirIndices() {
+        if (indicesCarregados) {
+            return true;
+        }
+        synchronized (LOCK_INDICES) {
+            if (!indicesCarregados) {
+                try (Connection conexaoCarga = Database.getConnection()) {
+                    if (conexaoCarga == null) {
+                        return false;
+                    }
+                    if (!indiceUsuarios.isCarregado()) {
+                        indiceUsuarios.carregar(conexaoCarga);
+                    }
+                    if (!indiceDuplicados.isCarregado()) {
+                        indiceDuplicados.carregar(conexaoCarga);
+                    }
+                    if (!despacho.isCarregado()) {
+                        despacho.carregar(conexaoCarga);
+                    }
+                    indicesCarregados = true;
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+            return indicesCarregados;
+        }
     }
 
     // Métodos principais do sistema
@@ -480,7 +633,9 @@ public class Sistema {
         if (titulo == null || titulo.trim().isEmpty() || descricao == null || descricao.trim().isEmpty()) {
             return "Erro: Título e descrição são obrigatórios";
         }
-        try (PreparedStatement stmt = conexao.prepareStatement(
+        // Antes da escrita: uma carga dos índices em andamento não pode perder este ticket
+        boolean indices = garantirIndices();
+        try (PreparedStatement stmt = roteador.paraEscrita().prepareStatement(
                 "INSERT INTO tickets (titulo, descricao, categoria_id, solicitante_id, prioridade) VALUES (?, ?, ?, ?, ?)",
                 Statement.RETURN_GENERATED_KEYS)) {
             stmt.setString(1, titulo);
@@ -492,7 +647,25 @@ public class Sistema {
             if (affectedRows > 0) {
                 try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
                     if (generatedKeys.next()) {
-                        return "Ticket criado com sucesso! ID: " + generatedKeys.getLong(1);
+                        int novoId = generatedKeys.getInt(1);
+                        if (!indices) {
+                            return "Ticket criado com sucesso! ID: " + novoId;
+                        }
+                        indiceUsuarios.registrarCriacao(novoId, usuarioLogado.getId());
+                        int[] duplicados = indiceDuplicados.buscarSemelhantes(titulo, descricao, LIMITE_DUPLICADOS);
+                        indiceDuplicados.adicionar(novoId, titulo, descricao);
+                        despacho.aplicar(novoId, StatusTicket.ABERTO, PrioridadeTicket.MEDIA, 0);
+                        if (Boolean.parseBoolean(lerConfiguracao("atribuicao_automatica", "true"))) {
+                            try {
+                                // A carga dos técnicos inclui o que outros processos atribuíram
+                                despacho.atualizar(conexao);
+                                gravarReserva(novoId, despacho.reservarParaMenosCarregado(novoId));
+                            } catch (SQLException e) {
+                                // O ticket foi criado; fica na fila para ser assumido depois
+                                e.printStackTrace();
+                            }
+                        }
+                        return "Ticket criado com sucesso! ID: " + generatedKeys.getLong(1) + tratarDuplicados(novoId, duplicados);
                     }
                 }
             }
@@ -503,6 +676,98 @@ public class Sistema {
         return "Erro: Não foi possível criar o ticket";
     }
 
+    // Despacho: o técnico recebe o próximo ticket da fila em vez de consultar os tickets abertos
+    public String assumirProximoTicket() {
+        if (usuarioLogado == null || !usuarioLogado.podeAssumirTicket()) {
+            return "Erro: Sem permissão para assumir tickets";
+        }
+        if (!garantirIndices()) {
+            return "Erro: Fila de despacho indisponível";
+        }
+        try {
+            // Traz os tickets abertos e atribuídos por outros processos desde a última consulta
+            despacho.atualizar(conexao);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        int ticketId;
+        while ((ticketId = despacho.reservarProximo(usuarioLogado.getId())) != 0) {
+            try {
+                if (gravarReserva(ticketId, usuarioLogado.getId())) {
+                    return "Ticket atribuído a você! ID: " + ticketId;
+                }
+            } catch (SQLException e) {
+                // O ticket voltou para a fila; tentar de novo só o reservaria outra vez
+                e.printStackTrace();
+                return "Erro ao assumir ticket: " + e.getMessage();
+            }
+        }
+        return "Nenhum ticket aguardando atendimento";
+    }
+
+    /**
+     * Grava no banco uma reserva feita pelo despacho. As condições
+     * responsavel_id IS NULL e status = 'ABERTO' garantem que uma atribuição
+     * ou mudança de status feita por outra instância não seja sobrescrita;
+     * nesse caso a reserva é desfeita e a próxima atualização do despacho
+     * traz o estado real. Se o banco falhar, o ticket volta para a fila e a
+     * exceção é repassada.
+     */
+    private boolean gravarReserva(int ticketId, int tecnicoId) throws SQLException {
+        if (tecnicoId == 0) {
+            return false;
+        }
+        String sql = "UPDATE tickets SET responsavel_id = ?, status = 'EM_ANDAMENTO' WHERE id = ? AND responsavel_id IS NULL AND status = 'ABERTO'";
+        try (PreparedStatement stmt = roteador.paraEscrita().prepareStatement(sql)) {
+            stmt.setInt(1, tecnicoId);
+            stmt.setInt(2, ticketId);
+            if (stmt.executeUpdate() > 0) {
+                despacho.confirmar(ticketId);
+                indiceUsuarios.registrarAtribuicao(ticketId, tecnicoId);
+                return true;
+            }
+            despacho.liberar(ticketId, false);
+        } catch (SQLException e) {
+            despacho.liberar(ticketId, true);
+            throw e;
+        }
+        return false;
+    }
+
+    public int[] buscarPossiveisDuplicados(String titulo, String descricao) {
+        if (!garantirIndices()) {
+            return new int[0];
+        }
+        return indiceDuplicados.buscarSemelhantes(titulo, descricao, LIMITE_DUPLICADOS);
+    }
+
+    // Marca o novo ticket e os semelhantes como 'Recorrente' (se configurado) e monta o aviso para o usuário
+    private String tratarDuplicados(int novoId, int[] duplicados) {
+        if (duplicados.length == 0) {
+            return "";
+        }
+        StringBuilder aviso = new StringBuilder(" (possíveis duplicados: ");
+        for (int i = 0; i < duplicados.length; i++) {
+            aviso.append(i == 0 ? "" : ", ").append(duplicados[i]);
+        }
+        aviso.append(")");
+        if (Boolean.parseBoolean(lerConfiguracao("marcar_recorrentes", "true"))) {
+            String sql = "INSERT IGNORE INTO ticket_tags (ticket_id, tag_id) SELECT ?, id FROM tags WHERE nome = 'Recorrente'";
+            try (PreparedStatement stmt = roteador.paraEscrita().prepareStatement(sql)) {
+                stmt.setInt(1, novoId);
+                stmt.addBatch();
+                for (int duplicado : duplicados) {
+                    stmt.setInt(1, duplicado);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        return aviso.toString();
+    }
+
     private Ticket mapearResultSetParaTicket(ResultSet rs) throws SQLException {
         return new Ticket(
                 rs.getInt("id"),
@@ -520,34 +785,47 @@ public class Sistema {
         );
     }
 
+    // Consulta de tickets numa réplica; se a réplica falhar, a consulta é repetida no primário
+    private List<Ticket> consultarTickets(String sql, Object... parametros) throws SQLException {
+        return roteador.ler(conexaoLeitura -> {
+            List<Ticket> ticketsEncontrados = new ArrayList<>();
+            try (PreparedStatement stmt = conexaoLeitura.prepareStatement(sql)) {
+                for (int i = 0; i < parametros.length; i++) {
+                    stmt.setObject(i + 1, parametros[i]);
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        ticketsEncontrados.add(mapearResultSetParaTicket(rs));
+                    }
+                }
+            }
+            return ticketsEncontrados;
+        });
+    }
+
     public List<Ticket> listarTickets() {
         if (usuarioLogado == null) {
             return new ArrayList<>();
         }
-        List<Ticket> ticketsEncontrados = new ArrayList<>();
-        String sql = "SELECT * FROM tickets";
-
-        if (usuarioLogado.getPerfil() != PerfilUsuario.ADMIN && usuarioLogado.getPerfil() != PerfilUsuario.TECNICO) {
-            sql += " WHERE solicitante_id = ?";
-        }
-
-        try (PreparedStatement stmt = conexao.prepareStatement(sql)) {
+        try {
             if (usuarioLogado.getPerfil() != PerfilUsuario.ADMIN && usuarioLogado.getPerfil() != PerfilUsuario.TECNICO) {
-                stmt.setInt(1, usuarioLogado.getId());
-            }
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    ticketsEncontrados.add(mapearResultSetParaTicket(rs));
-                }
+                return consultarTickets("SELECT * FROM tickets WHERE solicitante_id = ?", usuarioLogado.getId());
             }
+            return consultarTickets("SELECT * FROM tickets");
         } catch (SQLException e) {
             e.printStackTrace();
+            return new ArrayList<>();
         }
-        return ticketsEncontrados;
     }
 
+    // Tickets arquivados continuam acessíveis: a busca cai para tickets_arquivo quando necessário
     public Ticket buscarTicketPorId(String id) {
-        String sql = "SELECT * FROM tickets WHERE id = ?";
+        Ticket ticket = buscarTicketNaTabela("tickets", id);
+        return ticket != null ? ticket : buscarTicketNaTabela("tickets_arquivo", id);
+    }
+
+    private Ticket buscarTicketNaTabela(String tabela, String id) {
+        String sql = "SELECT * FROM " + tabela + " WHERE id = ?";
         try (PreparedStatement stmt = conexao.prepareStatement(sql)) {
             stmt.setInt(1, Integer.parseInt(id));
             try (ResultSet rs = stmt.executeQuery()) {
@@ -572,12 +850,24 @@ public class Sistema {
         if (!usuarioLogado.podeEditarTicket(ticket)) {
             return "Erro: Sem permissão para editar este ticket";
         }
+        boolean indices = garantirIndices();
         String sql = "UPDATE tickets SET status = ? WHERE id = ?";
-        try (PreparedStatement stmt = conexao.prepareStatement(sql)) {
+        try (PreparedStatement stmt = roteador.paraEscrita().prepareStatement(sql)) {
             stmt.setString(1, novoStatus.name());
             stmt.setInt(2, Integer.parseInt(ticketId));
             int affectedRows = stmt.executeUpdate();
             if (affectedRows > 0) {
+                if (!indices) {
+                    return "Status atualizado com sucesso";
+                }
+                // Só tickets não fechados participam da detecção de duplicados
+                if (novoStatus == StatusTicket.FECHADO) {
+                    indiceDuplicados.remover(ticket.getId());
+                } else if (ticket.getStatus() == StatusTicket.FECHADO) {
+                    indiceDuplicados.adicionar(ticket.getId(), ticket.getTitulo(), ticket.getDescricao());
+                }
+                despacho.aplicar(ticket.getId(), novoStatus, ticket.getPrioridade(),
+                        ticket.getResponsavelId() != null ? ticket.getResponsavelId() : 0);
                 return "Status atualizado com sucesso";
             }
         } catch (SQLException e) {
@@ -591,12 +881,22 @@ public class Sistema {
         if (usuarioLogado == null || !usuarioLogado.podeAssumirTicket()) {
             return "Erro: Sem permissão para atribuir responsável";
         }
+        Ticket ticket = buscarTicketPorId(ticketId);
+        if (ticket == null) {
+            return "Erro: Ticket não encontrado";
+        }
+        boolean indices = garantirIndices();
         String sql = "UPDATE tickets SET responsavel_id = ?, status = CASE WHEN status = 'ABERTO' THEN 'EM_ANDAMENTO' ELSE status END WHERE id = ?";
-        try (PreparedStatement stmt = conexao.prepareStatement(sql)) {
+        try (PreparedStatement stmt = roteador.paraEscrita().prepareStatement(sql)) {
             stmt.setInt(1, Integer.parseInt(responsavelId));
             stmt.setInt(2, Integer.parseInt(ticketId));
             int affectedRows = stmt.executeUpdate();
             if (affectedRows > 0) {
+                if (indices) {
+                    indiceUsuarios.registrarAtribuicao(Integer.parseInt(ticketId), Integer.parseInt(responsavelId));
+                    StatusTicket novoStatus = ticket.getStatus() == StatusTicket.ABERTO ? StatusTicket.EM_ANDAMENTO : ticket.getStatus();
+                    despacho.aplicar(ticket.getId(), novoStatus, ticket.getPrioridade(), Integer.parseInt(responsavelId));
+                }
                 return "Responsável atribuído com sucesso";
             }
         } catch (SQLException e) {
@@ -611,7 +911,7 @@ public class Sistema {
             return "Erro: Usuário não autenticado";
         }
         String sql = "INSERT INTO comentarios (ticket_id, usuario_id, conteudo, tipo) VALUES (?, ?, ?, ?)";
-        try (PreparedStatement stmt = conexao.prepareStatement(sql)) {
+        try (PreparedStatement stmt = roteador.paraEscrita().prepareStatement(sql)) {
             stmt.setInt(1, Integer.parseInt(ticketId));
             stmt.setInt(2, usuarioLogado.getId());
             stmt.setString(3, conteudo);
@@ -627,107 +927,236 @@ public class Sistema {
         return "Erro: Não foi possível adicionar o comentário";
     }
 
+    // Anexos: o conteúdo fica no armazenamento endereçado por hash e a tabela anexos guarda os metadados
+    public String anexarArquivo(String ticketId, String nomeOriginal, String tipoMime, InputStream conteudo) {
+        if (usuarioLogado == null) {
+            return "Erro: Usuário não autenticado";
+        }
+        Ticket ticket = buscarTicketPorId(ticketId);
+        if (ticket == null) {
+            return "Erro: Ticket não encontrado";
+        }
+        if (!usuarioLogado.podeEditarTicket(ticket)) {
+            return "Erro: Sem permissão para anexar arquivos a este ticket";
+        }
+        try {
+            // anexos.tamanho é INT: o limite é verificado durante a cópia, antes de gravar o arquivo
+            ArmazenamentoAnexos.Conteudo armazenado = armazenamentoAnexos.armazenar(conteudo, Integer.MAX_VALUE);
+            String sql = "INSERT INTO anexos (ticket_id, nome_original, nome_arquivo, tamanho, tipo_mime, caminho, usuario_id) VALUES (?, ?, ?, ?, ?, ?, ?)";
+            try (PreparedStatement stmt = roteador.paraEscrita().prepareStatement(sql)) {
+                stmt.setInt(1, Integer.parseInt(ticketId));
+                stmt.setString(2, nomeOriginal);
+                stmt.setString(3, armazenado.getHash());
+                stmt.setInt(4, (int) armazenado.getTamanho());
+                stmt.setString(5, tipoMime);
+                stmt.setString(6, ArmazenamentoAnexos.caminhoRelativo(armazenado.getHash()));
+                stmt.setInt(7, usuarioLogado.getId());
+                if (stmt.executeUpdate() > 0) {
+                    return "Anexo adicionado com sucesso";
+                }
+            }
+        } catch (IOException | SQLException e) {
+            e.printStackTrace();
+            return "Erro ao adicionar anexo: " + e.getMessage();
+        }
+        return "Erro: Não foi possível adicionar o anexo";
+    }
+
+    public List<Anexo> listarAnexos(String ticketId) {
+        List<Anexo> anexos = new ArrayList<>();
+        Ticket ticket = buscarTicketPorId(ticketId);
+        if (usuarioLogado == null || ticket == null || !usuarioLogado.podeEditarTicket(ticket)) {
+            return anexos;
+        }
+        for (String tabela : new String[]{"anexos", "anexos_arquivo"}) {
+            String sql = "SELECT * FROM " + tabela + " WHERE ticket_id = ? ORDER BY data_upload";
+            try (PreparedStatement stmt = conexao.prepareStatement(sql)) {
+                stmt.setInt(1, ticket.getId());
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        anexos.add(mapearResultSetParaAnexo(rs));
+                    }
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        return anexos;
+    }
+
+    // Retorna null se o anexo não existir ou o usuário não puder ver o ticket
+    public Anexo buscarAnexoPorId(String id) {
+        for (String tabela : new String[]{"anexos", "anexos_arquivo"}) {
+            String sql = "SELECT * FROM " + tabela + " WHERE id = ?";
+            try (PreparedStatement stmt = conexao.prepareStatement(sql)) {
+                stmt.setInt(1, Integer.parseInt(id));
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        Anexo anexo = mapearResultSetParaAnexo(rs);
+                        Ticket ticket = buscarTicketPorId(String.valueOf(anexo.getTicketId()));
+                        boolean permitido = usuarioLogado != null && ticket != null && usuarioLogado.podeEditarTicket(ticket);
+                        return permitido ? anexo : null;
+                    }
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Escreve o intervalo pedido do anexo no canal de saída (por exemplo, o
+     * canal da resposta HTTP), sem copiar arquivos grandes para o heap.
+     * Retorna -1, sem escrever nada, se o usuário não puder ver o ticket; o
+     * intervalo é restrito ao tamanho do anexo, e um intervalo que começa
+     * depois do fim não envia nada.
+     */
+    public long enviarAnexo(Anexo anexo, ArmazenamentoAnexos.Intervalo intervalo, WritableByteChannel destino) throws IOException {
+        // Relê o anexo do banco: a permissão e o hash vêm do registro, não do objeto recebido
+        Anexo registrado = buscarAnexoPorId(String.valueOf(anexo.getId()));
+        if (registrado == null) {
+            return -1;
+        }
+        ArmazenamentoAnexos.Intervalo valido = intervalo.limitarA(registrado.getTamanho());
+        if (valido == null) {
+            return 0;
+        }
+        return armazenamentoAnexos.enviar(registrado.getNomeArquivo(), valido, destino);
+    }
+
+    private Anexo mapearResultSetParaAnexo(ResultSet rs) throws SQLException {
+        return new Anexo(
+                rs.getInt("id"),
+                rs.getInt("ticket_id"),
+                rs.getString("nome_original"),
+                rs.getString("nome_arquivo"),
+                rs.getInt("tamanho"),
+                rs.getString("tipo_mime"),
+                rs.getString("caminho"),
+                rs.getTimestamp("data_upload"),
+                rs.getInt("usuario_id")
+        );
+    }
+
     // Métodos de busca e filtros
     public List<Ticket> buscarTickets(String termo) {
         List<Ticket> ticketsEncontrados = new ArrayList<>();
         if (termo == null || termo.trim().isEmpty()) {
             return listarTickets();
         }
-        String sql = "SELECT * FROM tickets WHERE (titulo LIKE ? OR descricao LIKE ? OR codigo LIKE ?)";
-        if (usuarioLogado.getPerfil() != PerfilUsuario.ADMIN && usuarioLogado.getPerfil() != PerfilUsuario.TECNICO) {
-            sql += " AND solicitante_id = ?";
-        }
+        buscarTicketsNaTabela("tickets", termo, ticketsEncontrados);
+        buscarTicketsNaTabela("tickets_arquivo", termo, ticketsEncontrados);
+        return ticketsEncontrados;
+    }
 
-        try (PreparedStatement stmt = conexao.prepareStatement(sql)) {
-            String termoBusca = "%" + termo + "%";
-            stmt.setString(1, termoBusca);
-            stmt.setString(2, termoBusca);
-            stmt.setString(3, termoBusca);
+    private void buscarTicketsNaTabela(String tabela, String termo, List<Ticket> ticketsEncontrados) {
+        String sql = "SELECT * FROM " + tabela + " WHERE (titulo LIKE ? OR descricao LIKE ? OR codigo LIKE ?)";
+        String termoBusca = "%" + termo + "%";
+        try {
             if (usuarioLogado.getPerfil() != PerfilUsuario.ADMIN && usuarioLogado.getPerfil() != PerfilUsuario.TECNICO) {
-                stmt.setInt(4, usuarioLogado.getId());
-            }
-
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    ticketsEncontrados.add(mapearResultSetParaTicket(rs));
-                }
+                ticketsEncontrados.addAll(consultarTickets(sql + " AND solicitante_id = ?",
+                        termoBusca, termoBusca, termoBusca, usuarioLogado.getId()));
+            } else {
+                ticketsEncontrados.addAll(consultarTickets(sql, termoBusca, termoBusca, termoBusca));
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return ticketsEncontrados;
     }
 
-    public List<Ticket> filtrarTicketsPorStatus(StatusTicket status) {
-        List<Ticket> ticketsEncontrados = new ArrayList<>();
-        String sql = "SELECT * FROM tickets WHERE status = ?";
+    // Consultas de "meus tickets" atendidas pelo índice em memória, sem acesso ao banco
+    public int contarMeusTickets() {
+        return usuarioLogado == null || !atualizarIndiceUsuarios() ? 0 : indiceUsuarios.contarPorSolicitante(usuarioLogado.getId());
+    }
+
+    public int[] getIdsMeusTickets() {
+        return usuarioLogado == null || !atualizarIndiceUsuarios() ? new int[0] : indiceUsuarios.idsPorSolicitante(usuarioLogado.getId());
+    }
+
+    public int contarTicketsAtribuidos() {
+        return usuarioLogado == null || !atualizarIndiceUsuarios() ? 0 : indiceUsuarios.contarPorResponsavel(usuarioLogado.getId());
+    }
 
-        if (usuarioLogado != null && usuarioLogado.getPerfil() != PerfilUsuario.ADMIN && usuarioLogado.getPerfil() != PerfilUsuario.TECNICO) {
-            sql += " AND solicitante_id = ?";
+    public int[] getIdsTicketsAtribuidos() {
+        return usuarioLogado == null || !atualizarIndiceUsuarios() ? new int[0] : indiceUsuarios.idsPorResponsavel(usuarioLogado.getId());
+    }
+
+    // Traz para o índice os tickets criados ou atribuídos por outras instâncias; sem banco, serve o que já tem
+    private boolean atualizarIndiceUsuarios() {
+        if (!garantirIndices()) {
+            return false;
+        }
+        try {
+            roteador.ler(conexaoLeitura -> {
+                indiceUsuarios.atualizar(conexaoLeitura);
+                return null;
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
         }
+        return true;
+    }
 
-        try (PreparedStatement stmt = conexao.prepareStatement(sql)) {
-            stmt.setString(1, status.name());
+    public List<Ticket> filtrarTicketsPorStatus(StatusTicket status) {
+        String sql = "SELECT * FROM tickets WHERE status = ?";
+        try {
             if (usuarioLogado != null && usuarioLogado.getPerfil() != PerfilUsuario.ADMIN && usuarioLogado.getPerfil() != PerfilUsuario.TECNICO) {
-                stmt.setInt(2, usuarioLogado.getId());
-            }
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    ticketsEncontrados.add(mapearResultSetParaTicket(rs));
-                }
+                return consultarTickets(sql + " AND solicitante_id = ?", status.name(), usuarioLogado.getId());
             }
+            return consultarTickets(sql, status.name());
         } catch (SQLException e) {
             e.printStackTrace();
+            return new ArrayList<>();
         }
-        return ticketsEncontrados;
     }
 
     public List<Ticket> filtrarTicketsPorPrioridade(PrioridadeTicket prioridade) {
-        List<Ticket> ticketsEncontrados = new ArrayList<>();
         String sql = "SELECT * FROM tickets WHERE prioridade = ?";
-
-        if (usuarioLogado != null && usuarioLogado.getPerfil() != PerfilUsuario.ADMIN && usuarioLogado.getPerfil() != PerfilUsuario.TECNICO) {
-            sql += " AND solicitante_id = ?";
-        }
-
-        try (PreparedStatement stmt = conexao.prepareStatement(sql)) {
-            stmt.setString(1, prioridade.name());
+        try {
             if (usuarioLogado != null && usuarioLogado.getPerfil() != PerfilUsuario.ADMIN && usuarioLogado.getPerfil() != PerfilUsuario.TECNICO) {
-                stmt.setInt(2, usuarioLogado.getId());
+                return consultarTickets(sql + " AND solicitante_id = ?", prioridade.name(), usuarioLogado.getId());
             }
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    ticketsEncontrados.add(mapearResultSetParaTicket(rs));
-                }
+            return consultarTickets(sql, prioridade.name());
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    public String arquivarTicketsFechados() {
+        if (usuarioLogado == null || !usuarioLogado.temPermissao(Usuario.PERMISSAO_ADMINISTRAR)) {
+            return "Erro: Sem permissão para arquivar tickets";
+        }
+        int dias = Integer.parseInt(lerConfiguracao("dias_arquivamento", "365"));
+        try {
+            List<Integer> arquivados = new ArquivoTickets(roteador.paraEscrita()).arquivarFechadosHaMaisDe(dias);
+            int[] ids = new int[arquivados.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = arquivados.get(i);
             }
+            snapshotTickets.remover(ids);
+            return "Tickets arquivados: " + ids.length;
         } catch (SQLException e) {
             e.printStackTrace();
+            return "Erro ao arquivar tickets: " + e.getMessage();
         }
-        return ticketsEncontrados;
     }
 
     // Métodos auxiliares
-    private Usuario buscarUsuarioPorId(String id) {
-        String sql = "SELECT * FROM usuarios WHERE id = ?";
+    private String lerConfiguracao(String chave, String valorPadrao) {
+        String sql = "SELECT valor FROM configuracoes WHERE chave = ?";
         try (PreparedStatement stmt = conexao.prepareStatement(sql)) {
-            stmt.setInt(1, Integer.parseInt(id));
+            stmt.setString(1, chave);
             try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return new Usuario(
-                            rs.getInt("id"),
-                            rs.getString("nome"),
-                            rs.getString("email"),
-                            PerfilUsuario.valueOf(rs.getString("perfil")),
-                            rs.getInt("departamento_id"),
-                            rs.getBoolean("ativo"),
-                            rs.getTimestamp("data_criacao")
-                    );
+                if (rs.next() && rs.getString("valor") != null) {
+                    return rs.getString("valor");
                 }
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return null;
+        return valorPadrao;
     }
 
     private Categoria buscarCategoriaPorId(String id) {
@@ -752,43 +1181,28 @@ public class Sistema {
     }
 
     // Getters para acesso aos dados
+    // Usuários e categorias vêm da cópia em memória, atualizada pelas alterações desde a última leitura
     public List<Usuario> getUsuarios() {
-        List<Usuario> usuarios = new ArrayList<>();
-        String sql = "SELECT * FROM usuarios";
-        try (Statement stmt = conexao.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                usuarios.add(new Usuario(
-                        rs.getInt("id"),
-                        rs.getString("nome"),
-                        rs.getString("email"),
-                        PerfilUsuario.valueOf(rs.getString("perfil")),
-                        rs.getInt("departamento_id"),
-                        rs.getBoolean("ativo"),
-                        rs.getTimestamp("data_criacao")
-                ));
-            }
+        try {
+            sincronizarCadastros();
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return usuarios;
+        return cadastros.getUsuarios();
     }
 
     public List<Categoria> getCategorias() {
-        List<Categoria> categorias = new ArrayList<>();
-        String sql = "SELECT * FROM categorias WHERE ativa = TRUE";
-        try (Statement stmt = conexao.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                categorias.add(new Categoria(
-                        rs.getInt("id"),
-                        rs.getString("nome"),
-                        rs.getString("descricao"),
-                        rs.getString("cor"),
-                        rs.getBoolean("ativa")
-                ));
-            }
+        try {
+            sincronizarCadastros();
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        List<Categoria> categorias = new ArrayList<>();
+        for (Categoria categoria : cadastros.getCategorias()) {
+            if (categoria.isAtiva()) {
+                categorias.add(categoria);
+            }
+        }
         return categorias;
     }
 
@@ -800,67 +1214,173 @@ public class Sistema {
         this.usuarioLogado = usuario;
     }
 
+    // Sessões: a senha é conferida só no login; as requisições seguintes validam o token em memória.
+    // login retorna o token da sessão, ou null se as credenciais forem inválidas.
+    // Em qualquer falha o usuário logado é limpo, para que a requisição não rode com a identidade anterior.
+    public String login(String email, String senha) {
+        this.usuarioLogado = null;
+        try {
+            String token = sessoes.login(email, senha);
+            if (token != null) {
+                this.usuarioLogado = sessoes.validar(token);
+            }
+            return token;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    public boolean autenticar(String token) {
+        this.usuarioLogado = sessoes.validar(token);
+        return usuarioLogado != null;
+    }
+
+    public void logout(String token) {
+        sessoes.encerrar(token);
+        this.usuarioLogado = null;
+    }
+
     // Estatísticas do sistema
+    // As agregações rodam sobre o snapshot colunar, atualizado de forma incremental a cada consulta.
+    // Sem acesso ao banco, continua servindo o último estado do snapshot, se houver um
+    private boolean atualizarSnapshot() {
+        try {
+            sincronizarSnapshot();
+            snapshotDisponivel = true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return snapshotDisponivel;
+    }
+
+    // Reaplicar linhas numa atualização incremental é inofensivo, então a falha numa réplica pode ser repetida no primário
+    private void sincronizarSnapshot() throws SQLException {
+        roteador.ler(conexaoLeitura -> {
+            snapshotTickets.atualizar(conexaoLeitura);
+            return null;
+        });
+    }
+
+    private void sincronizarCadastros() throws SQLException {
+        roteador.ler(conexaoLeitura -> {
+            cadastros.atualizar(conexaoLeitura);
+            return null;
+        });
+    }
+
     public Map<String, Integer> getEstatisticasStatus() {
         Map<String, Integer> stats = new HashMap<>();
-        String sql = "SELECT status, COUNT(*) as total FROM tickets GROUP BY status";
-        try (Statement stmt = conexao.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                stats.put(rs.getString("status"), rs.getInt("total"));
+        if (!atualizarSnapshot()) {
+            return stats;
+        }
+        int[] totais = snapshotTickets.contarPorStatus();
+        for (StatusTicket status : StatusTicket.values()) {
+            if (totais[status.ordinal()] > 0) {
+                stats.put(status.name(), totais[status.ordinal()]);
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
         }
         return stats;
     }
 
     public Map<String, Integer> getEstatisticasPrioridade() {
         Map<String, Integer> stats = new HashMap<>();
-        String sql = "SELECT prioridade, COUNT(*) as total FROM tickets GROUP BY prioridade";
-        try (Statement stmt = conexao.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                stats.put(rs.getString("prioridade"), rs.getInt("total"));
+        if (!atualizarSnapshot()) {
+            return stats;
+        }
+        int[] totais = snapshotTickets.contarPorPrioridade();
+        for (PrioridadeTicket prioridade : PrioridadeTicket.values()) {
+            if (totais[prioridade.getNivel()] > 0) {
+                stats.put(prioridade.name(), totais[prioridade.getNivel()]);
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
         }
         return stats;
     }
 
-    public int getTotalTickets() {
-        String sql = "SELECT COUNT(*) FROM tickets";
-        try (Statement stmt = conexao.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
-            if (rs.next()) {
-                return rs.getInt(1);
+    public Map<Integer, Integer> getEstatisticasCategoria() {
+        Map<Integer, Integer> stats = new HashMap<>();
+        if (!atualizarSnapshot()) {
+            return stats;
+        }
+        int[] totais = snapshotTickets.contarPorCategoria();
+        for (int categoriaId = 1; categoriaId < totais.length; categoriaId++) {
+            if (totais[categoriaId] > 0) {
+                stats.put(categoriaId, totais[categoriaId]);
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
         }
-        return 0;
+        return stats;
     }
 
-    public int getTicketsAbertos() {
-        String sql = "SELECT COUNT(*) FROM tickets WHERE status != 'FECHADO'";
-        try (Statement stmt = conexao.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
-            if (rs.next()) {
-                return rs.getInt(1);
+    // Tickets por responsável; tickets sem responsável não entram no mapa
+    public Map<Integer, Integer> getEstatisticasResponsavel() {
+        Map<Integer, Integer> stats = new HashMap<>();
+        if (!atualizarSnapshot()) {
+            return stats;
+        }
+        int[] totais = snapshotTickets.contarPorResponsavel();
+        for (int responsavelId = 1; responsavelId < totais.length; responsavelId++) {
+            if (totais[responsavelId] > 0) {
+                stats.put(responsavelId, totais[responsavelId]);
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
         }
-        return 0;
+        return stats;
+    }
+
+    public int getTotalTickets() {
+        if (!atualizarSnapshot()) {
+            return 0;
+        }
+        return snapshotTickets.getTotal();
+    }
+
+    public int getTicketsAbertos() {
+        if (!atualizarSnapshot()) {
+            return 0;
+        }
+        return snapshotTickets.contarAbertos();
     }
 
     public double getTempoMedioResolucao() {
-        String sql = "SELECT AVG(TIMESTAMPDIFF(HOUR, data_criacao, data_resolucao)) FROM tickets WHERE data_resolucao IS NOT NULL";
-        try (Statement stmt = conexao.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
-            if (rs.next()) {
-                return rs.getDouble(1);
-            }
+        if (!atualizarSnapshot()) {
+            return 0.0;
+        }
+        return snapshotTickets.tempoMedioResolucaoHoras();
+    }
+
+    // Snapshot binário para inicialização rápida de uma nova instância
+    public String salvarSnapshot(String caminho) {
+        try {
+            sincronizarSnapshot();
+            sincronizarCadastros();
+            SnapshotBinario.salvar(Paths.get(caminho), snapshotTickets, cadastros);
+            return "Snapshot salvo com sucesso";
+        } catch (SQLException | IOException e) {
+            e.printStackTrace();
+            return "Erro ao salvar snapshot: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Carrega o snapshot e em seguida aplica as alterações feitas no banco
+     * depois da marca d'água gravada nele. Se o banco estiver indisponível, os
+     * dados do snapshot continuam sendo servidos.
+     */
+    public String carregarSnapshot(String caminho) {
+        try {
+            SnapshotBinario.carregar(Paths.get(caminho), snapshotTickets, cadastros);
+            snapshotDisponivel = true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return "Erro ao carregar snapshot: " + e.getMessage();
+        }
+        try {
+            sincronizarSnapshot();
+            sincronizarCadastros();
         } catch (SQLException e) {
             e.printStackTrace();
+            return "Snapshot carregado, mas sem sincronizar com o banco: " + e.getMessage();
         }
-        return 0.0;
+        return "Snapshot carregado com sucesso";
     }
 
     public void gerarArquivosJson() {
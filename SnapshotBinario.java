@@ -0,0 +1,252 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Grava e carrega o snapshot binário usado para aquecer um Sistema recém
+ * iniciado: colunas de tickets, usuários e categorias, com as marcas d'água
+ * de data_atualizacao para a atualização incremental posterior.
+ *
+ * Formato (little-endian): cabeçalho {mágico, versão, gerado em} seguido de
+ * seções {tipo, comprimento, conteúdo, CRC32 do conteúdo}. Seções de tipo
+ * desconhecido são ignoradas na leitura.
+ */
+public final class SnapshotBinario {
+
+    private static final int MAGICO = 0x3145474F; // "OGE1"
+    // Versão 2: a seção de tickets guarda também a marca de arquivamento
+    private static final short VERSAO = 2;
+
+    private static final int SECAO_TICKETS = 1;
+    private static final int SECAO_USUARIOS = 2;
+    private static final int SECAO_CATEGORIAS = 3;
+
+    private SnapshotBinario() {
+    }
+
+    public static void salvar(Path arquivo, SnapshotColunarTickets tickets, CadastrosEmMemoria cadastros) throws IOException {
+        Path temporario = arquivo.resolveSibling(arquivo.getFileName() + ".tmp");
+        try (FileChannel canal = FileChannel.open(temporario, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer cabecalho = ByteBuffer.allocate(Integer.BYTES + Short.BYTES + Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            cabecalho.putInt(MAGICO).putShort(VERSAO).putLong(System.currentTimeMillis());
+            cabecalho.flip();
+            escreverTudo(canal, cabecalho);
+            escreverSecao(canal, SECAO_TICKETS, tickets.exportarColunas());
+            escreverSecao(canal, SECAO_USUARIOS, codificarUsuarios(cadastros));
+            escreverSecao(canal, SECAO_CATEGORIAS, codificarCategorias(cadastros));
+            canal.force(true);
+        }
+        // Troca atômica para que um snapshot anterior nunca fique pela metade
+        Files.move(temporario, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static void carregar(Path arquivo, SnapshotColunarTickets tickets, CadastrosEmMemoria cadastros) throws IOException {
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            MappedByteBuffer mapa = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            mapa.order(ByteOrder.LITTLE_ENDIAN);
+            if (mapa.remaining() < Integer.BYTES + Short.BYTES + Long.BYTES || mapa.getInt() != MAGICO) {
+                throw new IOException("Arquivo não é um snapshot do sistema: " + arquivo);
+            }
+            short versao = mapa.getShort();
+            if (versao != VERSAO) {
+                throw new IOException("Versão de snapshot não suportada: " + versao);
+            }
+            mapa.getLong(); // gerado em
+            ByteBuffer secaoTickets = null;
+            ByteBuffer secaoUsuarios = null;
+            ByteBuffer secaoCategorias = null;
+            while (mapa.hasRemaining()) {
+                if (mapa.remaining() < 2 * Integer.BYTES) {
+                    throw new IOException("Snapshot truncado no cabeçalho de seção: " + arquivo);
+                }
+                int tipo = mapa.getInt();
+                int comprimento = mapa.getInt();
+                if (comprimento < 0 || (long) comprimento + Long.BYTES > mapa.remaining()) {
+                    throw new IOException("Snapshot truncado na seção " + tipo);
+                }
+                ByteBuffer conteudo = mapa.slice();
+                conteudo.limit(comprimento);
+                mapa.position(mapa.position() + comprimento);
+                long crcEsperado = mapa.getLong();
+                if (crc(conteudo) != crcEsperado) {
+                    throw new IOException("Checksum inválido na seção " + tipo);
+                }
+                conteudo.order(ByteOrder.LITTLE_ENDIAN);
+                if (tipo == SECAO_TICKETS) {
+                    secaoTickets = conteudo;
+                } else if (tipo == SECAO_USUARIOS) {
+                    secaoUsuarios = conteudo;
+                } else if (tipo == SECAO_CATEGORIAS) {
+                    secaoCategorias = conteudo;
+                }
+            }
+            if (secaoTickets == null || secaoUsuarios == null || secaoCategorias == null) {
+                throw new IOException("Snapshot incompleto: " + arquivo);
+            }
+            // Só altera o estado em memória depois de validar todas as seções
+            long marcaUsuarios;
+            List<Sistema.Usuario> usuarios;
+            long marcaCategorias;
+            List<Sistema.Categoria> categorias;
+            try {
+                marcaUsuarios = secaoUsuarios.getLong();
+                usuarios = decodificarUsuarios(secaoUsuarios);
+                marcaCategorias = secaoCategorias.getLong();
+                categorias = decodificarCategorias(secaoCategorias);
+                // importarColunas só troca as colunas depois de ler a seção inteira
+                tickets.importarColunas(secaoTickets);
+            } catch (RuntimeException e) {
+                // Seção com checksum válido mas conteúdo inconsistente (estouro de buffer, enum ou tamanho inválido)
+                throw new IOException("Conteúdo inválido no snapshot: " + arquivo, e);
+            }
+            cadastros.restaurar(usuarios, marcaUsuarios, categorias, marcaCategorias);
+        }
+    }
+
+    private static void escreverSecao(FileChannel canal, int tipo, ByteBuffer conteudo) throws IOException {
+        ByteBuffer cabecalho = ByteBuffer.allocate(2 * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        cabecalho.putInt(tipo).putInt(conteudo.remaining());
+        cabecalho.flip();
+        ByteBuffer rodape = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        rodape.putLong(crc(conteudo.duplicate()));
+        rodape.flip();
+        escreverTudo(canal, cabecalho);
+        escreverTudo(canal, conteudo);
+        escreverTudo(canal, rodape);
+    }
+
+    private static void escreverTudo(FileChannel canal, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+    }
+
+    private static long crc(ByteBuffer conteudo) {
+        CRC32 crc = new CRC32();
+        crc.update(conteudo.duplicate());
+        return crc.getValue();
+    }
+
+    // Usuários: marca d'água, quantidade e registros {id, nome, email, perfil, departamento, ativo, data de criação}
+    private static ByteBuffer codificarUsuarios(CadastrosEmMemoria cadastros) {
+        long marca = cadastros.getMarcaDaguaUsuarios();
+        List<Sistema.Usuario> usuarios = cadastros.getUsuarios();
+        Codificador saida = new Codificador();
+        saida.buffer.putLong(marca).putInt(usuarios.size());
+        for (Sistema.Usuario usuario : usuarios) {
+            saida.garantir(64);
+            saida.buffer.putInt(usuario.getId());
+            saida.putString(usuario.getNome());
+            saida.putString(usuario.getEmail());
+            saida.garantir(32);
+            saida.buffer.put((byte) usuario.getPerfil().ordinal())
+                    .putInt(usuario.getDepartamentoId())
+                    .put((byte) (usuario.isAtivo() ? 1 : 0))
+                    .putLong(Timestamp.valueOf(usuario.getDataCriacao()).getTime());
+        }
+        return saida.concluir();
+    }
+
+    private static List<Sistema.Usuario> decodificarUsuarios(ByteBuffer entrada) {
+        int quantidade = entrada.getInt();
+        List<Sistema.Usuario> usuarios = new ArrayList<>(quantidade);
+        Sistema.PerfilUsuario[] perfis = Sistema.PerfilUsuario.values();
+        for (int i = 0; i < quantidade; i++) {
+            int id = entrada.getInt();
+            String nome = getString(entrada);
+            String email = getString(entrada);
+            Sistema.PerfilUsuario perfil = perfis[entrada.get()];
+            int departamentoId = entrada.getInt();
+            boolean ativo = entrada.get() != 0;
+            Timestamp dataCriacao = new Timestamp(entrada.getLong());
+            usuarios.add(new Sistema.Usuario(id, nome, email, perfil, departamentoId, ativo, dataCriacao));
+        }
+        return usuarios;
+    }
+
+    // Categorias: marca d'água, quantidade e registros {id, nome, descrição, cor, ativa}
+    private static ByteBuffer codificarCategorias(CadastrosEmMemoria cadastros) {
+        long marca = cadastros.getMarcaDaguaCategorias();
+        List<Sistema.Categoria> categorias = cadastros.getCategorias();
+        Codificador saida = new Codificador();
+        saida.buffer.putLong(marca).putInt(categorias.size());
+        for (Sistema.Categoria categoria : categorias) {
+            saida.garantir(16);
+            saida.buffer.putInt(categoria.getId());
+            saida.putString(categoria.getNome());
+            saida.putString(categoria.getDescricao());
+            saida.putString(categoria.getCor());
+            saida.garantir(1);
+            saida.buffer.put((byte) (categoria.isAtiva() ? 1 : 0));
+        }
+        return saida.concluir();
+    }
+
+    private static List<Sistema.Categoria> decodificarCategorias(ByteBuffer entrada) {
+        int quantidade = entrada.getInt();
+        List<Sistema.Categoria> categorias = new ArrayList<>(quantidade);
+        for (int i = 0; i < quantidade; i++) {
+            int id = entrada.getInt();
+            String nome = getString(entrada);
+            String descricao = getString(entrada);
+            String cor = getString(entrada);
+            boolean ativa = entrada.get() != 0;
+            categorias.add(new Sistema.Categoria(id, nome, descricao, cor, ativa));
+        }
+        return categorias;
+    }
+
+    // Strings: comprimento em bytes UTF-8 (-1 para null) seguido dos bytes
+    private static String getString(ByteBuffer entrada) {
+        int comprimento = entrada.getInt();
+        if (comprimento < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[comprimento];
+        entrada.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static class Codificador {
+
+        private ByteBuffer buffer = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+
+        void garantir(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer maior = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                buffer.flip();
+                maior.put(buffer);
+                buffer = maior;
+            }
+        }
+
+        void putString(String valor) {
+            if (valor == null) {
+                garantir(Integer.BYTES);
+                buffer.putInt(-1);
+                return;
+            }
+            byte[] bytes = valor.getBytes(StandardCharsets.UTF_8);
+            garantir(Integer.BYTES + bytes.length);
+            buffer.putInt(bytes.length).put(bytes);
+        }
+
+        ByteBuffer concluir() {
+            buffer.flip();
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,486 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Snapshot colunar em memória da tabela tickets, usado pelas estatísticas do
+ * dashboard. Cada coluna é um array primitivo indexado pela linha e a
+ * atualização é incremental a partir da maior data_atualizacao já lida.
+ */
+public class SnapshotColunarTickets {
+
+    // Abaixo deste número de linhas a agregação roda na thread chamadora
+    private static final int LIMIAR_PARALELO = 1 << 16;
+    private static final int CAPACIDADE_INICIAL = 1024;
+    private static final long MILIS_POR_HORA = 3_600_000L;
+    // data_atualizacao tem precisão de segundos e a linha só fica visível no commit: uma transação
+    // que gravou no segundo T e confirmou depois de uma atualização já ter passado de T seria
+    // perdida. Cada atualização relê esta janela antes da marca d'água; reaplicar uma linha é inofensivo.
+    // Usada também pelos demais índices que se atualizam pela data_atualizacao.
+    static final long JANELA_RELEITURA_MS = 5_000L;
+
+    private static final String SQL_ALTERACOES = "SELECT id, status, prioridade, categoria_id, solicitante_id, responsavel_id, "
+            + "data_criacao, data_atualizacao, data_resolucao FROM tickets WHERE data_atualizacao >= ?";
+    // Tickets arquivados saem da tabela tickets; esta consulta leva a remoção a todas as instâncias
+    private static final String SQL_ARQUIVADOS = "SELECT id, data_arquivamento FROM tickets_arquivo WHERE data_arquivamento >= ?";
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Colunas; responsavelId = 0 e dataResolucao = 0 representam NULL
+    private int tamanho;
+    private int[] ids = new int[CAPACIDADE_INICIAL];
+    private byte[] status = new byte[CAPACIDADE_INICIAL];
+    private byte[] prioridade = new byte[CAPACIDADE_INICIAL];
+    private int[] categoriaId = new int[CAPACIDADE_INICIAL];
+    private int[] solicitanteId = new int[CAPACIDADE_INICIAL];
+    private int[] responsavelId = new int[CAPACIDADE_INICIAL];
+    private long[] dataCriacao = new long[CAPACIDADE_INICIAL];
+    private long[] dataAtualizacao = new long[CAPACIDADE_INICIAL];
+    private long[] dataResolucao = new long[CAPACIDADE_INICIAL];
+
+    // linhaPorId[id] = linha + 1; os ids são AUTO_INCREMENT, portanto densos
+    private int[] linhaPorId = new int[CAPACIDADE_INICIAL];
+    private long marcaDagua;
+    // Maior data_arquivamento já reconciliada; só avança depois que os arquivados saíram das colunas
+    private volatile long marcaArquivamento;
+
+    /**
+     * Lê do banco apenas os tickets alterados e os arquivados desde a última
+     * atualização e os aplica ao snapshot. As consultas rodam fora do lock de
+     * escrita; os arquivados são lidos depois das alterações, para que um
+     * ticket arquivado entre as duas consultas também seja removido.
+     */
+    public synchronized void atualizar(Connection conexao) throws SQLException {
+        Lote lote = new Lote();
+        try (PreparedStatement stmt = conexao.prepareStatement(SQL_ALTERACOES)) {
+            stmt.setTimestamp(1, new Timestamp(Math.max(0, marcaDagua - JANELA_RELEITURA_MS)));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Timestamp resolucao = rs.getTimestamp("data_resolucao");
+                    lote.adicionar(
+                            rs.getInt("id"),
+                            (byte) Sistema.StatusTicket.valueOf(rs.getString("status")).ordinal(),
+                            (byte) Sistema.PrioridadeTicket.valueOf(rs.getString("prioridade")).getNivel(),
+                            rs.getInt("categoria_id"),
+                            rs.getInt("solicitante_id"),
+                            rs.getInt("responsavel_id"),
+                            rs.getTimestamp("data_criacao").getTime(),
+                            rs.getTimestamp("data_atualizacao").getTime(),
+                            resolucao != null ? resolucao.getTime() : 0L);
+                }
+            }
+        }
+        int[] arquivados = new int[16];
+        int quantidadeArquivados = 0;
+        long novaMarcaArquivamento = marcaArquivamento;
+        try (PreparedStatement stmt = conexao.prepareStatement(SQL_ARQUIVADOS)) {
+            stmt.setTimestamp(1, new Timestamp(Math.max(0, marcaArquivamento - JANELA_RELEITURA_MS)));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (quantidadeArquivados == arquivados.length) {
+                        arquivados = Arrays.copyOf(arquivados, arquivados.length * 2);
+                    }
+                    arquivados[quantidadeArquivados++] = rs.getInt("id");
+                    novaMarcaArquivamento = Math.max(novaMarcaArquivamento, rs.getTimestamp("data_arquivamento").getTime());
+                }
+            }
+        }
+        aplicar(lote);
+        remover(Arrays.copyOf(arquivados, quantidadeArquivados));
+        marcaArquivamento = novaMarcaArquivamento;
+    }
+
+    private void aplicar(Lote lote) {
+        if (lote.tamanho == 0) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            garantirCapacidade(tamanho + lote.tamanho);
+            for (int i = 0; i < lote.tamanho; i++) {
+                int id = lote.ids[i];
+                int linha = linhaDe(id);
+                if (linha < 0) {
+                    linha = tamanho++;
+                    ids[linha] = id;
+                    if (id >= linhaPorId.length) {
+                        linhaPorId = Arrays.copyOf(linhaPorId, Math.max(id + 1, linhaPorId.length * 2));
+                    }
+                    linhaPorId[id] = linha + 1;
+                }
+                status[linha] = lote.status[i];
+                prioridade[linha] = lote.prioridade[i];
+                categoriaId[linha] = lote.categoriaId[i];
+                solicitanteId[linha] = lote.solicitanteId[i];
+                responsavelId[linha] = lote.responsavelId[i];
+                dataCriacao[linha] = lote.dataCriacao[i];
+                dataAtualizacao[linha] = lote.dataAtualizacao[i];
+                dataResolucao[linha] = lote.dataResolucao[i];
+                if (lote.dataAtualizacao[i] > marcaDagua) {
+                    marcaDagua = lote.dataAtualizacao[i];
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove tickets do snapshot (por exemplo, após o arquivamento). A última
+     * linha ocupa o lugar da removida, mantendo as colunas contíguas.
+     */
+    public synchronized void remover(int[] idsRemovidos) {
+        lock.writeLock().lock();
+        try {
+            for (int id : idsRemovidos) {
+                int linha = linhaDe(id);
+                if (linha < 0) {
+                    continue;
+                }
+                int ultima = --tamanho;
+                if (linha != ultima) {
+                    ids[linha] = ids[ultima];
+                    status[linha] = status[ultima];
+                    prioridade[linha] = prioridade[ultima];
+                    categoriaId[linha] = categoriaId[ultima];
+                    solicitanteId[linha] = solicitanteId[ultima];
+                    responsavelId[linha] = responsavelId[ultima];
+                    dataCriacao[linha] = dataCriacao[ultima];
+                    dataAtualizacao[linha] = dataAtualizacao[ultima];
+                    dataResolucao[linha] = dataResolucao[ultima];
+                    linhaPorId[ids[linha]] = linha + 1;
+                }
+                linhaPorId[id] = 0;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Serialização usada pelo SnapshotBinario: tamanho, marcas d'água e as colunas em sequência
+    private static final int BYTES_POR_LINHA = 5 * Integer.BYTES + 2 * Byte.BYTES + 3 * Long.BYTES;
+
+    ByteBuffer exportarColunas() {
+        lock.readLock().lock();
+        try {
+            ByteBuffer destino = ByteBuffer.allocate(Integer.BYTES + 2 * Long.BYTES + tamanho * BYTES_POR_LINHA)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            destino.putInt(tamanho).putLong(marcaDagua).putLong(marcaArquivamento);
+            destino.asIntBuffer().put(ids, 0, tamanho);
+            destino.position(destino.position() + tamanho * Integer.BYTES);
+            destino.put(status, 0, tamanho).put(prioridade, 0, tamanho);
+            for (int[] coluna : new int[][]{categoriaId, solicitanteId, responsavelId}) {
+                destino.asIntBuffer().put(coluna, 0, tamanho);
+                destino.position(destino.position() + tamanho * Integer.BYTES);
+            }
+            for (long[] coluna : new long[][]{dataCriacao, dataAtualizacao, dataResolucao}) {
+                destino.asLongBuffer().put(coluna, 0, tamanho);
+                destino.position(destino.position() + tamanho * Long.BYTES);
+            }
+            destino.flip();
+            return destino;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    synchronized void importarColunas(ByteBuffer origem) {
+        origem.order(ByteOrder.LITTLE_ENDIAN);
+        int n = origem.getInt();
+        long marca = origem.getLong();
+        long marcaArquivados = origem.getLong();
+        int capacidade = Math.max(n, CAPACIDADE_INICIAL);
+        int[] novosIds = lerInts(origem, n, capacidade);
+        byte[] novoStatus = new byte[capacidade];
+        byte[] novaPrioridade = new byte[capacidade];
+        origem.get(novoStatus, 0, n).get(novaPrioridade, 0, n);
+        int[] novaCategoria = lerInts(origem, n, capacidade);
+        int[] novoSolicitante = lerInts(origem, n, capacidade);
+        int[] novoResponsavel = lerInts(origem, n, capacidade);
+        long[] novaCriacao = lerLongs(origem, n, capacidade);
+        long[] novaAtualizacao = lerLongs(origem, n, capacidade);
+        long[] novaResolucao = lerLongs(origem, n, capacidade);
+        int maiorId = 0;
+        for (int i = 0; i < n; i++) {
+            maiorId = Math.max(maiorId, novosIds[i]);
+        }
+        int[] novaLinhaPorId = new int[Math.max(maiorId + 1, CAPACIDADE_INICIAL)];
+        for (int i = 0; i < n; i++) {
+            novaLinhaPorId[novosIds[i]] = i + 1;
+        }
+        lock.writeLock().lock();
+        try {
+            tamanho = n;
+            marcaDagua = marca;
+            marcaArquivamento = marcaArquivados;
+            ids = novosIds;
+            status = novoStatus;
+            prioridade = novaPrioridade;
+            categoriaId = novaCategoria;
+            solicitanteId = novoSolicitante;
+            responsavelId = novoResponsavel;
+            dataCriacao = novaCriacao;
+            dataAtualizacao = novaAtualizacao;
+            dataResolucao = novaResolucao;
+            linhaPorId = novaLinhaPorId;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static int[] lerInts(ByteBuffer origem, int n, int capacidade) {
+        int[] coluna = new int[capacidade];
+        origem.asIntBuffer().get(coluna, 0, n);
+        origem.position(origem.position() + n * Integer.BYTES);
+        return coluna;
+    }
+
+    private static long[] lerLongs(ByteBuffer origem, int n, int capacidade) {
+        long[] coluna = new long[capacidade];
+        origem.asLongBuffer().get(coluna, 0, n);
+        origem.position(origem.position() + n * Long.BYTES);
+        return coluna;
+    }
+
+    private int linhaDe(int id) {
+        return id < linhaPorId.length ? linhaPorId[id] - 1 : -1;
+    }
+
+    private void garantirCapacidade(int minimo) {
+        if (minimo <= ids.length) {
+            return;
+        }
+        int capacidade = Math.max(minimo, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, capacidade);
+        status = Arrays.copyOf(status, capacidade);
+        prioridade = Arrays.copyOf(prioridade, capacidade);
+        categoriaId = Arrays.copyOf(categoriaId, capacidade);
+        solicitanteId = Arrays.copyOf(solicitanteId, capacidade);
+        responsavelId = Arrays.copyOf(responsavelId, capacidade);
+        dataCriacao = Arrays.copyOf(dataCriacao, capacidade);
+        dataAtualizacao = Arrays.copyOf(dataAtualizacao, capacidade);
+        dataResolucao = Arrays.copyOf(dataResolucao, capacidade);
+    }
+
+    // Consultas agregadas
+    public int getTotal() {
+        lock.readLock().lock();
+        try {
+            return tamanho;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Quantidade de tickets por status, indexada por {@code StatusTicket.ordinal()}. */
+    public int[] contarPorStatus() {
+        lock.readLock().lock();
+        try {
+            final byte[] coluna = status;
+            return paraInt(agregar(Sistema.StatusTicket.values().length, (inicio, fim, destino) -> {
+                for (int i = inicio; i < fim; i++) {
+                    destino[coluna[i]]++;
+                }
+            }));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Quantidade de tickets por prioridade, indexada por {@code PrioridadeTicket.getNivel()}. */
+    public int[] contarPorPrioridade() {
+        lock.readLock().lock();
+        try {
+            final byte[] coluna = prioridade;
+            return paraInt(agregar(Sistema.PrioridadeTicket.CRITICA.getNivel() + 1, (inicio, fim, destino) -> {
+                for (int i = inicio; i < fim; i++) {
+                    destino[coluna[i]]++;
+                }
+            }));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Quantidade de tickets por categoria, indexada pelo id da categoria. */
+    public int[] contarPorCategoria() {
+        lock.readLock().lock();
+        try {
+            return contarPorChave(categoriaId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Quantidade de tickets por responsável, indexada pelo id do usuário (0 = sem responsável). */
+    public int[] contarPorResponsavel() {
+        lock.readLock().lock();
+        try {
+            return contarPorChave(responsavelId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int contarAbertos() {
+        lock.readLock().lock();
+        try {
+            final byte[] coluna = status;
+            final int fechado = Sistema.StatusTicket.FECHADO.ordinal();
+            return (int) agregar(1, (inicio, fim, destino) -> {
+                long total = 0;
+                for (int i = inicio; i < fim; i++) {
+                    total += coluna[i] != fechado ? 1 : 0;
+                }
+                destino[0] += total;
+            })[0];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Média em horas entre criação e resolução, com o mesmo truncamento por
+     * ticket de TIMESTAMPDIFF(HOUR, ...).
+     */
+    public double tempoMedioResolucaoHoras() {
+        lock.readLock().lock();
+        try {
+            final long[] criacao = dataCriacao;
+            final long[] resolucao = dataResolucao;
+            long[] somaEQuantidade = agregar(2, (inicio, fim, destino) -> {
+                long soma = 0;
+                long quantidade = 0;
+                for (int i = inicio; i < fim; i++) {
+                    if (resolucao[i] != 0L) {
+                        soma += (resolucao[i] - criacao[i]) / MILIS_POR_HORA;
+                        quantidade++;
+                    }
+                }
+                destino[0] += soma;
+                destino[1] += quantidade;
+            });
+            return somaEQuantidade[1] == 0 ? 0.0 : (double) somaEQuantidade[0] / somaEQuantidade[1];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int[] contarPorChave(final int[] coluna) {
+        int maior = 0;
+        for (int i = 0; i < tamanho; i++) {
+            maior = Math.max(maior, coluna[i]);
+        }
+        return paraInt(agregar(maior + 1, (inicio, fim, destino) -> {
+            for (int i = inicio; i < fim; i++) {
+                destino[coluna[i]]++;
+            }
+        }));
+    }
+
+    // Deve ser chamado com o lock de leitura adquirido
+    private long[] agregar(int baldes, Acumulador acumulador) {
+        if (tamanho < LIMIAR_PARALELO) {
+            long[] destino = new long[baldes];
+            acumulador.acumular(0, tamanho, destino);
+            return destino;
+        }
+        return ForkJoinPool.commonPool().invoke(new TarefaAgregacao(acumulador, baldes, 0, tamanho));
+    }
+
+    private static int[] paraInt(long[] valores) {
+        int[] resultado = new int[valores.length];
+        for (int i = 0; i < valores.length; i++) {
+            resultado[i] = (int) valores[i];
+        }
+        return resultado;
+    }
+
+    private interface Acumulador {
+        void acumular(int inicio, int fim, long[] destino);
+    }
+
+    private static class TarefaAgregacao extends RecursiveTask<long[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Acumulador acumulador;
+        private final int baldes;
+        private final int inicio;
+        private final int fim;
+
+        TarefaAgregacao(Acumulador acumulador, int baldes, int inicio, int fim) {
+            this.acumulador = acumulador;
+            this.baldes = baldes;
+            this.inicio = inicio;
+            this.fim = fim;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (fim - inicio <= LIMIAR_PARALELO) {
+                long[] destino = new long[baldes];
+                acumulador.acumular(inicio, fim, destino);
+                return destino;
+            }
+            int meio = (inicio + fim) >>> 1;
+            TarefaAgregacao esquerda = new TarefaAgregacao(acumulador, baldes, inicio, meio);
+            esquerda.fork();
+            long[] direita = new TarefaAgregacao(acumulador, baldes, meio, fim).compute();
+            long[] resultado = esquerda.join();
+            for (int i = 0; i < baldes; i++) {
+                resultado[i] += direita[i];
+            }
+            return resultado;
+        }
+    }
+
+    // Linhas lidas do banco, acumuladas antes de adquirir o lock de escrita
+    private static class Lote {
+
+        private int tamanho;
+        private int[] ids = new int[64];
+        private byte[] status = new byte[64];
+        private byte[] prioridade = new byte[64];
+        private int[] categoriaId = new int[64];
+        private int[] solicitanteId = new int[64];
+        private int[] responsavelId = new int[64];
+        private long[] dataCriacao = new long[64];
+        private long[] dataAtualizacao = new long[64];
+        private long[] dataResolucao = new long[64];
+
+        void adicionar(int id, byte status, byte prioridade, int categoriaId, int solicitanteId, int responsavelId,
+                long dataCriacao, long dataAtualizacao, long dataResolucao) {
+            if (tamanho == ids.length) {
+                int capacidade = ids.length * 2;
+                this.ids = Arrays.copyOf(this.ids, capacidade);
+                this.status = Arrays.copyOf(this.status, capacidade);
+                this.prioridade = Arrays.copyOf(this.prioridade, capacidade);
+                this.categoriaId = Arrays.copyOf(this.categoriaId, capacidade);
+                this.solicitanteId = Arrays.copyOf(this.solicitanteId, capacidade);
+                this.responsavelId = Arrays.copyOf(this.responsavelId, capacidade);
+                this.dataCriacao = Arrays.copyOf(this.dataCriacao, capacidade);
+                this.dataAtualizacao = Arrays.copyOf(this.dataAtualizacao, capacidade);
+                this.dataResolucao = Arrays.copyOf(this.dataResolucao, capacidade);
+            }
+            this.ids[tamanho] = id;
+            this.status[tamanho] = status;
+            this.prioridade[tamanho] = prioridade;
+            this.categoriaId[tamanho] = categoriaId;
+            this.solicitanteId[tamanho] = solicitanteId;
+            this.responsavelId[tamanho] = responsavelId;
+            this.dataCriacao[tamanho] = dataCriacao;
+            this.dataAtualizacao[tamanho] = dataAtualizacao;
+            this.dataResolucao[tamanho] = dataResolucao;
+            tamanho++;
+        }
+    }
+}